@@ -0,0 +1,55 @@
+package com.howtographql;
+
+import io.vertx.core.json.JsonObject;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Representative documents: links posted by a small set of users, as on a front page.
+ */
+public class BenchmarkData {
+
+  public static Map<String, List<JsonObject>> collections(int users, int links) {
+    List<JsonObject> userDocs = new ArrayList<>();
+    for (int i = 0; i < users; i++) {
+      userDocs.add(user(new ObjectId().toHexString(), i));
+    }
+    List<JsonObject> linkDocs = new ArrayList<>();
+    for (int i = 0; i < links; i++) {
+      linkDocs.add(link(new ObjectId().toHexString(), i, userDocs.get(i % users).getString("_id")));
+    }
+    Map<String, List<JsonObject>> collections = new HashMap<>();
+    collections.put("users", userDocs);
+    collections.put("links", linkDocs);
+    return collections;
+  }
+
+  public static JsonObject user(String id, int i) {
+    return new JsonObject()
+      .put("_id", id)
+      .put("name", "User " + i)
+      .put("email", "user" + i + "@example.com")
+      .put("password", "secret" + i);
+  }
+
+  public static JsonObject link(String id, int i, String postedBy) {
+    return new JsonObject()
+      .put("_id", id)
+      .put("url", "https://example.com/articles/" + i)
+      .put("description", "An interesting article about GraphQL and Vert.x, number " + i)
+      .put("postedBy", postedBy)
+      .put("voteCount", i % 17);
+  }
+
+  public static JsonObject vote(String id, String userId, String linkId) {
+    return new JsonObject()
+      .put("_id", id)
+      .put("userId", userId)
+      .put("linkId", linkId)
+      .put("createdAt", "2019-01-15T10:15:30Z");
+  }
+}
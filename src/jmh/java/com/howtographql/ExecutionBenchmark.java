@@ -0,0 +1,93 @@
+package com.howtographql;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Executes {@code allLinks} queries the way {@code Server.handleGraphQL} does, over the in-memory repositories.
+ * <p>
+ * These don't go through the shared user cache, so {@code postedBy} is loaded by a DataLoader batch every time.
+ */
+@State(Scope.Benchmark)
+public class ExecutionBenchmark {
+
+  private static final String ALL_LINKS = "query AllLinks($first: Int) { allLinks(first: $first) { id url description } }";
+  private static final String ALL_LINKS_POSTED_BY = "query AllLinks($first: Int) { allLinks(first: $first) { id url description postedBy { id name } } }";
+
+  @Param({"10", "100", "500"})
+  public int first;
+
+  private Vertx vertx;
+  private Server server;
+
+  @Setup
+  public void setup() throws Exception {
+    vertx = Vertx.vertx();
+    server = new Server();
+    CompletableFuture<String> deployed = new CompletableFuture<>();
+    JsonObject config = new JsonObject()
+      .put("http.port", 0)
+      .put("storage", "memory")
+      .put("tokenSecret", "benchmark");
+    vertx.deployVerticle(server, new DeploymentOptions().setConfig(config), Utils.toHandler(deployed));
+    deployed.get(10, TimeUnit.SECONDS);
+
+    MemoryStore store = SharedResources.get(vertx, config).getMemoryStore();
+    Map<String, List<JsonObject>> collections = BenchmarkData.collections(50, 500);
+    for (JsonObject doc : collections.get("users")) {
+      store.insertUser(new User(doc.getString("_id"), doc.getString("name"), doc.getString("email"), doc.getString("password")), ar -> {
+      });
+    }
+    store.insertLinks(collections.get("links").stream()
+      .map(doc -> new Link(doc.getString("_id"), doc.getString("url"), doc.getString("description"), doc.getString("postedBy"), doc.getInteger("voteCount")))
+      .collect(toList()), ar -> {
+    });
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Benchmark
+  public ExecutionResult allLinks() {
+    return execute(ALL_LINKS);
+  }
+
+  @Benchmark
+  public ExecutionResult allLinksPostedBy() {
+    return execute(ALL_LINKS_POSTED_BY);
+  }
+
+  @Benchmark
+  public Buffer allLinksPostedBySerialized() {
+    return Json.encodeToBuffer(execute(ALL_LINKS_POSTED_BY).toSpecification());
+  }
+
+  private ExecutionResult execute(String query) {
+    ExecutionInput input = ExecutionInput.newExecutionInput()
+      .query(query)
+      .variables(new JsonObject().put("first", first).getMap())
+      .dataLoaderRegistry(server.dataLoaderRegistry(server.getDataLoaderOptions()))
+      .build();
+    return server.getGraphQL().executeAsync(input).join();
+  }
+}
@@ -0,0 +1,28 @@
+package com.howtographql;
+
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Document to model mapping done by the repositories for every row.
+ */
+@State(Scope.Benchmark)
+public class MappingBenchmark {
+
+  private final MongoLinkRepository linkRepository = new MongoLinkRepository(null, LinkRepository.SearchStrategy.REGEX, null);
+  private final MongoVoteRepository voteRepository = new MongoVoteRepository(null, null, null);
+  private final JsonObject linkDoc = BenchmarkData.link("5c3dc2d2a7b11b0001d3c5a1", 1, "5c3dc2d2a7b11b0001d3c5a2");
+  private final JsonObject voteDoc = BenchmarkData.vote("5c3dc2d2a7b11b0001d3c5a3", "5c3dc2d2a7b11b0001d3c5a2", "5c3dc2d2a7b11b0001d3c5a1");
+
+  @Benchmark
+  public Link link() {
+    return linkRepository.link(linkDoc);
+  }
+
+  @Benchmark
+  public Vote vote() {
+    return voteRepository.vote(voteDoc);
+  }
+}
@@ -0,0 +1,25 @@
+package com.howtographql;
+
+import graphql.language.StringValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.ZonedDateTime;
+
+@State(Scope.Benchmark)
+public class ScalarsBenchmark {
+
+  private final ZonedDateTime dateTime = ZonedDateTime.parse("2019-01-15T10:15:30Z");
+  private final StringValue literal = new StringValue("2019-01-15T10:15:30Z");
+
+  @Benchmark
+  public Object serialize() {
+    return Scalars.dateTime.getCoercing().serialize(dateTime);
+  }
+
+  @Benchmark
+  public Object parseLiteral() {
+    return Scalars.dateTime.getCoercing().parseLiteral(literal);
+  }
+}
@@ -0,0 +1,56 @@
+package com.howtographql;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encoding of an {@code allLinks} execution result, as a copied {@link JsonObject} and directly from the map.
+ */
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+  @Param({"50", "5000"})
+  public int links;
+
+  private Map<String, Object> result;
+
+  @Setup
+  public void setup() {
+    List<Object> list = new ArrayList<>(links);
+    for (int i = 0; i < links; i++) {
+      Map<String, Object> user = new LinkedHashMap<>();
+      user.put("id", "5c3dc2d2a7b11b0001d3c5a2");
+      user.put("name", "User " + (i % 50));
+      Map<String, Object> link = new LinkedHashMap<>();
+      link.put("id", "5c3dc2d2a7b11b0001d3" + String.format("%04x", i));
+      link.put("url", "https://example.com/articles/" + i);
+      link.put("description", "An interesting article about GraphQL and Vert.x, number " + i);
+      link.put("postedBy", user);
+      list.add(link);
+    }
+    result = new LinkedHashMap<>();
+    result.put("data", Collections.singletonMap("allLinks", list));
+  }
+
+  @Benchmark
+  public Buffer jsonObjectCopy() {
+    return new JsonObject(result).toBuffer();
+  }
+
+  @Benchmark
+  public Buffer encodeMap() {
+    return Json.encodeToBuffer(result);
+  }
+}
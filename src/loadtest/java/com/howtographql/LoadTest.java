@@ -0,0 +1,354 @@
+package com.howtographql;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+import org.HdrHistogram.Histogram;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the {@link Scenario} against {@link Server} instances backed by seeded storage, at a fixed arrival rate,
+ * and compares the latencies with a baseline.
+ * <p>
+ * The storage is the in-process {@link MemoryStore} by default, so that the load test runs anywhere and measures the
+ * servers alone. {@code "storage": "mongo"} measures them with MongoDB instead: the {@code users}, {@code links} and
+ * {@code votes} collections of the database are dropped and seeded again, so it also takes
+ * {@code "dropCollections": true} and a {@code "mongo"} client config naming a dedicated database with
+ * {@code db_name}, and never runs against the default database.
+ * <p>
+ * Latencies are measured from the time each request was due, not from the time it was sent: a stalled server delays
+ * the requests queued behind, and those delays are part of what users see (no coordinated omission). The load is
+ * generated from a separate Vert.x instance so that it doesn't share event loops with the servers.
+ * <p>
+ * Usage: {@code LoadTest <config.json> [record-baseline]}. The baseline file holds the results of a reference run per
+ * storage, with the number of CPUs and the rate it ran at. The process exits with status 1 on regressions: a 99th percentile above the baseline plus the tolerance,
+ * an error rate above {@code maxErrorRate}, or a throughput below 95% of the target rate.
+ */
+public class LoadTest {
+
+  private static final int SEED_BATCH_SIZE = 1000;
+
+  private final JsonObject config;
+  private final Map<String, Recorder> recorders = new LinkedHashMap<>();
+
+  private LoadTest(JsonObject config) {
+    this.config = config;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Path configPath = Paths.get(args.length > 0 ? args[0] : "src/loadtest/resources/loadtest.json");
+    boolean recordBaseline = args.length > 1 && args[1].equals("record-baseline");
+    JsonObject config = new JsonObject(new String(Files.readAllBytes(configPath), StandardCharsets.UTF_8));
+    List<String> regressions = new LoadTest(config).run(recordBaseline);
+    if (!regressions.isEmpty()) {
+      regressions.forEach(regression -> System.out.println("REGRESSION " + regression));
+      System.exit(1);
+    }
+    System.exit(0);
+  }
+
+  private List<String> run(boolean recordBaseline) throws Exception {
+    String storage = config.getString("storage", "memory");
+    JsonObject serverConfig = config.getJsonObject("server").copy().put("storage", storage);
+    if ("mongo".equals(storage)) {
+      serverConfig.put("mongo", mongoConfig(config));
+    }
+    Vertx serverVertx = Vertx.vertx();
+    SharedResources resources = SharedResources.get(serverVertx, serverConfig);
+
+    JsonObject seed = config.getJsonObject("seed");
+    LoadTestData data = new LoadTestData();
+    long seedStart = System.nanoTime();
+    CompletableFuture<Void> seeded = new CompletableFuture<>();
+    // The Mongo repositories must be used from an event loop
+    serverVertx.runOnContext(v -> {
+      Future<Void> cleared = Future.future();
+      Repositories repositories = repositories(serverVertx, resources, serverConfig, cleared);
+      cleared.compose(cleaned -> {
+        Future<String> hash = Future.future();
+        resources.getPasswordHasher().hash(LoadTestData.PASSWORD, hash);
+        return hash;
+      }).compose(hash -> {
+        Future<Void> future = Future.future();
+        data.seed(repositories.users, repositories.links, repositories.votes, hash, seed.getInteger("users"), seed.getInteger("links"),
+          seed.getInteger("votes"), future);
+        return future;
+      }).setHandler(ar -> complete(seeded, ar.failed() ? ar.cause() : null));
+    });
+    seeded.get();
+    System.out.printf("Seeded %d users, %d links, %d votes in %s storage in %d ms%n", seed.getInteger("users"), seed.getInteger("links"), seed.getInteger("votes"), storage,
+      TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart));
+
+    CompletableFuture<Void> deployed = new CompletableFuture<>();
+    serverVertx.deployVerticle(Main.class.getName(), new DeploymentOptions().setConfig(serverConfig), ar -> complete(deployed, ar.failed() ? ar.cause() : null));
+    deployed.get();
+
+    Vertx clientVertx = Vertx.vertx();
+    HttpClient client = clientVertx.createHttpClient(new HttpClientOptions()
+      .setDefaultHost("localhost")
+      .setDefaultPort(serverConfig.getInteger("http.port"))
+      .setMaxPoolSize(config.getInteger("connections", 64))
+      .setMaxWaitQueueSize(-1));
+    Map<String, Integer> mix = new LinkedHashMap<>();
+    config.getJsonObject("mix").forEach(entry -> mix.put(entry.getKey(), ((Number) entry.getValue()).intValue()));
+    Scenario scenario = new Scenario(data, mix);
+    mix.keySet().forEach(operation -> recorders.put(operation, new Recorder()));
+
+    int rate = config.getInteger("rate");
+    System.out.printf("Warming up for %d s at %d req/s%n", config.getInteger("warmupSeconds"), rate);
+    generate(clientVertx, client, scenario, rate, config.getInteger("warmupSeconds")).get();
+    recorders.values().forEach(Recorder::reset);
+    int duration = config.getInteger("durationSeconds");
+    System.out.printf("Measuring for %d s at %d req/s%n", duration, rate);
+    generate(clientVertx, client, scenario, rate, duration).get();
+
+    client.close();
+    clientVertx.close();
+    serverVertx.close();
+
+    JsonObject results = report(duration);
+    Path baselinePath = Paths.get(config.getString("baseline"));
+    JsonObject baselines = Files.exists(baselinePath) ? new JsonObject(new String(Files.readAllBytes(baselinePath), StandardCharsets.UTF_8)) : new JsonObject();
+    int cpus = Runtime.getRuntime().availableProcessors();
+    if (recordBaseline) {
+      baselines.put(storage, new JsonObject().put("cpus", cpus).put("rate", rate).put("operations", results));
+      Files.write(baselinePath, baselines.encodePrettily().getBytes(StandardCharsets.UTF_8));
+      System.out.println("Baseline for " + storage + " storage recorded in " + baselinePath);
+      return new ArrayList<>();
+    }
+    JsonObject baseline = baselines.getJsonObject(storage, new JsonObject());
+    if (baseline.getInteger("cpus", cpus) != cpus || baseline.getInteger("rate", rate) != rate) {
+      System.out.printf("Baseline recorded with %d CPUs at %d req/s, latencies are not comparable%n", baseline.getInteger("cpus"), baseline.getInteger("rate"));
+    }
+    return regressions(results, baseline.getJsonObject("operations", new JsonObject()), rate);
+  }
+
+  /**
+   * @return the Mongo client config, checked to name a dedicated database whose collections may be dropped
+   */
+  private static JsonObject mongoConfig(JsonObject config) {
+    JsonObject mongo = config.getJsonObject("mongo", new JsonObject());
+    String database = mongo.getString("db_name");
+    if (database == null || database.equals(MongoClient.DEFAULT_DB_NAME)) {
+      throw new IllegalArgumentException("The mongo storage needs a dedicated database in mongo.db_name, its collections are dropped");
+    }
+    if (!config.getBoolean("dropCollections", false)) {
+      throw new IllegalArgumentException("The mongo storage drops the users, links and votes collections of " + database
+        + ", set dropCollections to confirm");
+    }
+    return mongo;
+  }
+
+  /**
+   * Creates the repositories of the configured storage. The Mongo collections are dropped first, so that each run
+   * starts from the same data, and their indexes created before seeding.
+   */
+  private static Repositories repositories(Vertx vertx, SharedResources resources, JsonObject serverConfig, Handler<AsyncResult<Void>> cleared) {
+    MemoryStore memoryStore = resources.getMemoryStore();
+    if (memoryStore != null) {
+      LinkRepository links = new MemoryLinkRepository(memoryStore);
+      cleared.handle(Future.succeededFuture());
+      return new Repositories(new MemoryUserRepository(memoryStore), links, new MemoryVoteRepository(memoryStore, links));
+    }
+    MongoClient mongoClient = MongoClient.createShared(vertx, serverConfig.getJsonObject("mongo"));
+    LinkRepository links = new MongoLinkRepository(mongoClient, LinkRepository.SearchStrategy.REGEX,
+      new BulkWriter(vertx, mongoClient, "links", 0, SEED_BATCH_SIZE));
+    Repositories repositories = new Repositories(new MongoUserRepository(mongoClient, resources.getUserCache()), links,
+      new MongoVoteRepository(mongoClient, links, new BulkWriter(vertx, mongoClient, "votes", 0, SEED_BATCH_SIZE)));
+    List<Future> dropped = new ArrayList<>();
+    for (String collection : new String[]{"users", "links", "votes"}) {
+      Future<Void> future = Future.future();
+      mongoClient.dropCollection(collection, future);
+      dropped.add(future);
+    }
+    // Dropping a collection which doesn't exist fails: ignore the results
+    CompositeFuture.join(dropped).otherwiseEmpty().compose(v -> {
+      List<Future> indexes = new ArrayList<>();
+      Future<Void> userIndexes = Future.future();
+      repositories.users.createIndexes(userIndexes);
+      indexes.add(userIndexes);
+      Future<Void> linkIndexes = Future.future();
+      repositories.links.createIndexes(linkIndexes);
+      indexes.add(linkIndexes);
+      Future<Void> voteIndexes = Future.future();
+      repositories.votes.createIndexes(voteIndexes);
+      indexes.add(voteIndexes);
+      return CompositeFuture.all(indexes);
+    }).<Void>mapEmpty().setHandler(cleared);
+    return repositories;
+  }
+
+  /**
+   * Sends requests at {@code rate} per second for {@code seconds}.
+   *
+   * @return completes when every request sent has completed
+   */
+  private CompletableFuture<Void> generate(Vertx vertx, HttpClient client, Scenario scenario, int rate, int seconds) {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    vertx.runOnContext(v -> {
+      long start = System.nanoTime();
+      long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+      long total = (long) rate * seconds;
+      long[] sent = {0};
+      long[] completed = {0};
+      vertx.setPeriodic(1, timerId -> {
+        long due = Math.min(total, (System.nanoTime() - start) / intervalNanos + 1);
+        for (; sent[0] < due; sent[0]++) {
+          String operation = scenario.nextOperation();
+          send(client, operation, scenario.body(operation), start + sent[0] * intervalNanos, () -> {
+            if (++completed[0] == total) {
+              done.complete(null);
+            }
+          });
+        }
+        if (sent[0] == total) {
+          vertx.cancelTimer(timerId);
+        }
+      });
+    });
+    return done;
+  }
+
+  private void send(HttpClient client, String operation, JsonObject body, long intendedStart, Runnable onComplete) {
+    Recorder recorder = recorders.get(operation);
+    boolean[] recorded = {false};
+    HttpClientRequest request = client.request(HttpMethod.POST, "/graphql", response -> response.bodyHandler(buffer -> {
+      if (!recorded[0]) {
+        String text = buffer.toString(StandardCharsets.UTF_8);
+        boolean failed = response.statusCode() != 200 || text.contains("\"errors\"");
+        record(recorder, recorded, intendedStart, failed ? response.statusCode() + " " + text : null);
+        onComplete.run();
+      }
+    }));
+    request.exceptionHandler(t -> {
+      if (!recorded[0]) {
+        record(recorder, recorded, intendedStart, String.valueOf(t));
+        onComplete.run();
+      }
+    });
+    request.setTimeout(config.getLong("requestTimeout", 10_000L))
+      .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+      .end(Buffer.buffer(body.encode()));
+  }
+
+  private static void record(Recorder recorder, boolean[] recorded, long intendedStart, String error) {
+    recorded[0] = true;
+    recorder.latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart));
+    if (error != null) {
+      recorder.errors++;
+      if (recorder.firstError == null) {
+        recorder.firstError = error;
+      }
+    }
+  }
+
+  private JsonObject report(int duration) {
+    JsonObject results = new JsonObject();
+    System.out.printf("%n%-12s %9s %8s %10s %9s %9s %9s %9s %9s%n", "operation", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+    recorders.forEach((operation, recorder) -> {
+      Histogram histogram = recorder.latencies;
+      long count = histogram.getTotalCount();
+      JsonObject result = new JsonObject()
+        .put("requests", count)
+        .put("errors", recorder.errors)
+        .put("throughput", (double) count / duration)
+        .put("p50", millis(histogram.getValueAtPercentile(50)))
+        .put("p90", millis(histogram.getValueAtPercentile(90)))
+        .put("p99", millis(histogram.getValueAtPercentile(99)))
+        .put("p999", millis(histogram.getValueAtPercentile(99.9)))
+        .put("max", millis(histogram.getMaxValue()));
+      results.put(operation, result);
+      System.out.printf("%-12s %9d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", operation, count, recorder.errors, result.getDouble("throughput"),
+        result.getDouble("p50"), result.getDouble("p90"), result.getDouble("p99"), result.getDouble("p999"), result.getDouble("max"));
+    });
+    recorders.forEach((operation, recorder) -> {
+      if (recorder.firstError != null) {
+        System.out.printf("First %s error: %s%n", operation, recorder.firstError);
+      }
+    });
+    return results;
+  }
+
+  private List<String> regressions(JsonObject results, JsonObject baseline, int rate) {
+    List<String> regressions = new ArrayList<>();
+    double tolerance = config.getDouble("tolerance", 0.25);
+    double maxErrorRate = config.getDouble("maxErrorRate", 0.01);
+    double throughput = 0;
+    for (String operation : results.fieldNames()) {
+      JsonObject result = results.getJsonObject(operation);
+      throughput += result.getDouble("throughput");
+      long requests = result.getLong("requests");
+      if (requests > 0 && (double) result.getLong("errors") / requests > maxErrorRate) {
+        regressions.add(String.format("%s: %d errors out of %d requests", operation, result.getLong("errors"), requests));
+      }
+      JsonObject expected = baseline.getJsonObject(operation);
+      if (expected != null && result.getDouble("p99") > expected.getDouble("p99") * (1 + tolerance)) {
+        regressions.add(String.format("%s: p99 of %.2f ms, baseline %.2f ms", operation, result.getDouble("p99"), expected.getDouble("p99")));
+      }
+    }
+    if (throughput < rate * 0.95) {
+      regressions.add(String.format("throughput of %.1f req/s, target %d req/s", throughput, rate));
+    }
+    return regressions;
+  }
+
+  private static double millis(long micros) {
+    return micros / 1000d;
+  }
+
+  private static void complete(CompletableFuture<Void> future, Throwable failure) {
+    if (failure == null) {
+      future.complete(null);
+    } else {
+      future.completeExceptionally(failure);
+    }
+  }
+
+  private static class Repositories {
+
+    final UserRepository users;
+    final LinkRepository links;
+    final VoteRepository votes;
+
+    Repositories(UserRepository users, LinkRepository links, VoteRepository votes) {
+      this.users = users;
+      this.links = links;
+      this.votes = votes;
+    }
+  }
+
+  private static class Recorder {
+
+    // Auto-resizing, in microseconds
+    final Histogram latencies = new Histogram(3);
+    long errors;
+    String firstError;
+
+    void reset() {
+      latencies.reset();
+      errors = 0;
+      firstError = null;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package com.howtographql;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeds the storage with users, links and votes, and keeps their ids for the scenario to pick from.
+ * <p>
+ * All users share the same password, so that a single (expensive) hash is computed. Link descriptions mention one
+ * of the {@link #TOPICS}, which the filtered feed queries search for.
+ */
+public class LoadTestData {
+
+  public static final String PASSWORD = "password";
+  public static final String[] TOPICS = {"graphql", "vertx", "mongodb", "java", "performance", "reactive", "netty", "caching"};
+
+  private final List<String> userIds = new ArrayList<>();
+  private final List<String> linkIds = new ArrayList<>();
+
+  public static String email(int user) {
+    return "user" + user + "@example.com";
+  }
+
+  public List<String> getUserIds() {
+    return userIds;
+  }
+
+  public List<String> getLinkIds() {
+    return linkIds;
+  }
+
+  /**
+   * Saves the data through the repositories, so that the same seed works for every storage.
+   */
+  public void seed(UserRepository userRepository, LinkRepository linkRepository, VoteRepository voteRepository, String passwordHash,
+                   int users, int links, int votes, Handler<AsyncResult<Void>> handler) {
+    Random random = new Random(42);
+    List<Future> usersSaved = new ArrayList<>(users);
+    for (int i = 0; i < users; i++) {
+      Future<User> future = Future.future();
+      userRepository.saveUser(new User("User " + i, email(i), passwordHash), future);
+      usersSaved.add(future);
+    }
+    CompositeFuture.all(usersSaved).compose(savedUsers -> {
+      for (int i = 0; i < users; i++) {
+        userIds.add(savedUsers.<User>resultAt(i).getId());
+      }
+      List<Link> linkList = new ArrayList<>(links);
+      for (int i = 0; i < links; i++) {
+        String topic = TOPICS[i % TOPICS.length];
+        linkList.add(new Link("https://example.com/" + topic + "/" + i, "An interesting article about " + topic + ", number " + i,
+          userIds.get(random.nextInt(users))));
+      }
+      Future<List<Link>> linksSaved = Future.future();
+      linkRepository.saveLinks(linkList, linksSaved);
+      return linksSaved;
+    }).compose(savedLinks -> {
+      savedLinks.forEach(link -> linkIds.add(link.getId()));
+      List<Vote> voteList = new ArrayList<>(votes);
+      ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+      for (int i = 0; i < votes; i++) {
+        voteList.add(new Vote(now, userIds.get(random.nextInt(users)), linkIds.get(random.nextInt(links))));
+      }
+      Future<List<Vote>> votesSaved = Future.future();
+      voteRepository.saveVotes(voteList, votesSaved);
+      return votesSaved;
+    }).<Void>mapEmpty().setHandler(handler);
+  }
+}
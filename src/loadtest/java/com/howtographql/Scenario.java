@@ -0,0 +1,82 @@
+package com.howtographql;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The mix of operations replayed against the server, picked at random according to their weights.
+ * <p>
+ * Feed reads page through the first links, a third of them filtered by topic, and select the posters; sign-ins use
+ * random seeded users; votes are cast by random users on random links.
+ */
+public class Scenario {
+
+  public static final String ALL_LINKS = "allLinks";
+  public static final String SIGNIN_USER = "signinUser";
+  public static final String CREATE_VOTE = "createVote";
+
+  private static final String ALL_LINKS_QUERY = "query AllLinks($filter: LinkFilter, $skip: Int, $first: Int) {"
+    + " allLinks(filter: $filter, skip: $skip, first: $first) { id url description voteCount postedBy { id name } } }";
+  private static final String SIGNIN_USER_QUERY = "mutation SigninUser($email: String!, $password: String!) {"
+    + " signinUser(auth: {email: $email, password: $password}) { token user { id } } }";
+  private static final String CREATE_VOTE_QUERY = "mutation CreateVote($linkId: ID, $userId: ID) {"
+    + " createVote(linkId: $linkId, userId: $userId) { id } }";
+
+  private final LoadTestData data;
+  private final List<String> operations = new ArrayList<>();
+  private final int[] cumulativeWeights;
+
+  public Scenario(LoadTestData data, Map<String, Integer> mix) {
+    this.data = data;
+    this.cumulativeWeights = new int[mix.size()];
+    int total = 0;
+    for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+      total += entry.getValue();
+      cumulativeWeights[operations.size()] = total;
+      operations.add(entry.getKey());
+    }
+  }
+
+  public String nextOperation() {
+    int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+    for (int i = 0; i < cumulativeWeights.length; i++) {
+      if (pick < cumulativeWeights[i]) {
+        return operations.get(i);
+      }
+    }
+    throw new IllegalStateException();
+  }
+
+  public JsonObject body(String operation) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    JsonObject variables = new JsonObject();
+    switch (operation) {
+      case ALL_LINKS:
+        variables.put("skip", 30 * random.nextInt(4)).put("first", 30);
+        if (random.nextInt(3) == 0) {
+          variables.put("filter", new JsonObject().put("description_contains", LoadTestData.TOPICS[random.nextInt(LoadTestData.TOPICS.length)]));
+        }
+        return operation(ALL_LINKS_QUERY, "AllLinks", variables);
+      case SIGNIN_USER:
+        variables.put("email", LoadTestData.email(random.nextInt(data.getUserIds().size()))).put("password", LoadTestData.PASSWORD);
+        return operation(SIGNIN_USER_QUERY, "SigninUser", variables);
+      case CREATE_VOTE:
+        variables.put("linkId", pick(data.getLinkIds())).put("userId", pick(data.getUserIds()));
+        return operation(CREATE_VOTE_QUERY, "CreateVote", variables);
+      default:
+        throw new IllegalArgumentException("Unknown operation: " + operation);
+    }
+  }
+
+  private static String pick(List<String> ids) {
+    return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+  }
+
+  private static JsonObject operation(String query, String operationName, JsonObject variables) {
+    return new JsonObject().put("query", query).put("operationName", operationName).put("variables", variables);
+  }
+}
@@ -0,0 +1,136 @@
+package com.howtographql;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Decides which operations are executed when the server is overloaded, shared by all verticle instances.
+ * <p>
+ * An operation is rejected when the event loop it arrives on lags, or when too many executions or repository calls
+ * are pending. Each {@link Priority} gets a share of these thresholds: anonymous reads are shed first, mutations
+ * last. Independently, each token and each anonymous client address may only run a few operations at once.
+ */
+public class AdmissionController {
+
+  public enum Priority {
+
+    MUTATION(1.0), QUERY(0.75), ANONYMOUS(0.5);
+
+    private final double share;
+
+    Priority(double share) {
+      this.share = share;
+    }
+  }
+
+  private static final Ticket OVERLOADED = new Ticket(null, null, "OVERLOADED");
+  private static final Ticket CLIENT_LIMITED = new Ticket(null, null, "TOO_MANY_CONCURRENT_REQUESTS");
+
+  private final long maxEventLoopLag;
+  private final int maxInFlight;
+  private final int maxPendingRepositoryCalls;
+  private final int maxPerToken;
+  private final int maxPerAddress;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger pendingMongoCalls = new AtomicInteger();
+  private final IntSupplier pendingStoreWrites;
+  private final ConcurrentMap<String, Integer> clients = new ConcurrentHashMap<>();
+
+  public AdmissionController(long maxEventLoopLag, TimeUnit unit, int maxInFlight, int maxPendingRepositoryCalls, int maxPerToken, int maxPerAddress,
+                             IntSupplier pendingStoreWrites) {
+    this.maxEventLoopLag = unit.toNanos(maxEventLoopLag);
+    this.maxInFlight = maxInFlight;
+    this.maxPendingRepositoryCalls = maxPendingRepositoryCalls;
+    this.maxPerToken = maxPerToken;
+    this.maxPerAddress = maxPerAddress;
+    this.pendingStoreWrites = pendingStoreWrites;
+  }
+
+  /**
+   * @param userId       the authenticated user, {@code null} for anonymous clients
+   * @param address      the client address
+   * @param eventLoopLag the current lag of the calling event loop, in nanoseconds
+   * @return a ticket to release once the operation completes, possibly rejected
+   */
+  public Ticket tryAdmit(Priority priority, String userId, String address, long eventLoopLag) {
+    if (eventLoopLag > maxEventLoopLag * priority.share
+      || inFlight.get() >= maxInFlight * priority.share
+      || pendingRepositoryCalls() >= maxPendingRepositoryCalls * priority.share) {
+      return OVERLOADED;
+    }
+    String client = userId != null ? "token:" + userId : "address:" + address;
+    int limit = userId != null ? maxPerToken : maxPerAddress;
+    boolean[] acquired = {false};
+    clients.compute(client, (key, count) -> {
+      int current = count == null ? 0 : count;
+      if (current >= limit) {
+        return count;
+      }
+      acquired[0] = true;
+      return current + 1;
+    });
+    if (!acquired[0]) {
+      return CLIENT_LIMITED;
+    }
+    inFlight.incrementAndGet();
+    return new Ticket(this, client, null);
+  }
+
+  /**
+   * @return the counter the Mongo client decorator keeps up to date, see {@link MongoMetrics}
+   */
+  public AtomicInteger getPendingMongoCalls() {
+    return pendingMongoCalls;
+  }
+
+  public int pendingRepositoryCalls() {
+    return pendingMongoCalls.get() + pendingStoreWrites.getAsInt();
+  }
+
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  private void release(String client) {
+    inFlight.decrementAndGet();
+    clients.computeIfPresent(client, (key, count) -> count == 1 ? null : count - 1);
+  }
+
+  public static class Ticket {
+
+    private final AdmissionController controller;
+    private final String client;
+    private final String rejection;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Ticket(AdmissionController controller, String client, String rejection) {
+      this.controller = controller;
+      this.client = client;
+      this.rejection = rejection;
+    }
+
+    public boolean isAdmitted() {
+      return rejection == null;
+    }
+
+    /**
+     * @return {@code OVERLOADED} or {@code TOO_MANY_CONCURRENT_REQUESTS} for rejected operations
+     */
+    public String getRejection() {
+      return rejection;
+    }
+
+    /**
+     * Ends an admitted operation; later calls have no effect.
+     */
+    public void release() {
+      if (isAdmitted() && released.compareAndSet(false, true)) {
+        controller.release(client);
+      }
+    }
+  }
+}
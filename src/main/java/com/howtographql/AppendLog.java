@@ -0,0 +1,157 @@
+package com.howtographql;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * A file of JSON lines, appended by a single background thread.
+ * <p>
+ * Appends waiting while the thread writes are written and flushed together, and each handler is called back on the
+ * context it was submitted from once its entries are flushed (and forced to the device with {@code fsync}).
+ * Appends are written in submission order.
+ */
+public class AppendLog {
+
+  private final FileChannel channel;
+  private final Writer writer;
+  private final boolean fsync;
+  private final Queue<Append> pending = new ConcurrentLinkedQueue<>();
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "append-log");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  public AppendLog(Path file, boolean fsync) throws IOException {
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    this.writer = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+    this.fsync = fsync;
+  }
+
+  /**
+   * Reads the entries of a log; a truncated last line, left by a crash during an append, is ignored.
+   */
+  public static void replay(Path file, Consumer<JsonObject> consumer) throws IOException {
+    if (!Files.exists(file)) {
+      return;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        JsonObject entry;
+        try {
+          entry = new JsonObject(line);
+        } catch (RuntimeException e) {
+          if (reader.readLine() == null) {
+            return;
+          }
+          throw new IOException("Corrupted entry in " + file + ": " + line, e);
+        }
+        consumer.accept(entry);
+      }
+    }
+  }
+
+  /**
+   * Writes a whole file at once, replacing any previous version atomically.
+   */
+  public static void write(Path file, Iterable<JsonObject> entries) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+         Writer writer = new OutputStreamWriter(Channels.newOutputStream(out), StandardCharsets.UTF_8)) {
+      for (JsonObject entry : entries) {
+        writer.write(entry.encode());
+        writer.write('\n');
+      }
+      writer.flush();
+      out.force(true);
+    }
+    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  public void append(List<JsonObject> entries, Handler<AsyncResult<Void>> handler) {
+    pending.add(new Append(entries, Vertx.currentContext(), handler));
+    executor.execute(this::drain);
+  }
+
+  public int pendingCount() {
+    return pending.size();
+  }
+
+  private void drain() {
+    List<Append> appends = new ArrayList<>();
+    for (Append append; (append = pending.poll()) != null; ) {
+      appends.add(append);
+    }
+    if (appends.isEmpty()) {
+      return;
+    }
+    AsyncResult<Void> result;
+    try {
+      for (Append append : appends) {
+        for (JsonObject entry : append.entries) {
+          writer.write(entry.encode());
+          writer.write('\n');
+        }
+      }
+      writer.flush();
+      if (fsync) {
+        channel.force(false);
+      }
+      result = Future.succeededFuture();
+    } catch (IOException e) {
+      result = Future.failedFuture(new UncheckedIOException(e));
+    }
+    for (Append append : appends) {
+      append.complete(result);
+    }
+  }
+
+  private static class Append {
+
+    final List<JsonObject> entries;
+    final Context context;
+    final Handler<AsyncResult<Void>> handler;
+
+    Append(List<JsonObject> entries, Context context, Handler<AsyncResult<Void>> handler) {
+      this.entries = entries;
+      this.context = context;
+      this.handler = handler;
+    }
+
+    void complete(AsyncResult<Void> result) {
+      if (context == null) {
+        handler.handle(result);
+      } else {
+        context.runOnContext(v -> handler.handle(result));
+      }
+    }
+  }
+}
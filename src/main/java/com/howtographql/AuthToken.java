@@ -0,0 +1,33 @@
+package com.howtographql;
+
+import java.time.Instant;
+
+/**
+ * The verified claims of a bearer token: who the request is made for, without loading the user.
+ * <p>
+ * Resolvers needing more than the id and name load the {@link User} through the {@code user} DataLoader.
+ */
+public class AuthToken {
+
+  private final String userId;
+  private final String name;
+  private final Instant expiresAt;
+
+  public AuthToken(String userId, String name, Instant expiresAt) {
+    this.userId = userId;
+    this.name = name;
+    this.expiresAt = expiresAt;
+  }
+
+  public String getUserId() {
+    return userId;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Instant getExpiresAt() {
+    return expiresAt;
+  }
+}
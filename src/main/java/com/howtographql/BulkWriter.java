@@ -0,0 +1,109 @@
+package com.howtographql;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.mongo.BulkWriteOptions;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.ext.mongo.MongoClientBulkWriteResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coalesces the write operations submitted to a collection within a short window into a single {@code bulkWrite}.
+ * <p>
+ * Must be used from a single event loop, like the verticle owning it. Operations are unordered: when some of them
+ * fail, only the submissions holding them fail, the others succeed. The other operations of a failed submission are
+ * still applied.
+ */
+public class BulkWriter {
+
+  private final Vertx vertx;
+  private final MongoClient mongoClient;
+  private final String collection;
+  private final long window;
+  private final int maxSize;
+
+  private List<BulkOperation> operations = new ArrayList<>();
+  private List<Handler<AsyncResult<Void>>> handlers = new ArrayList<>();
+  // Index of the first operation of each submission
+  private List<Integer> offsets = new ArrayList<>();
+  private long timerId = -1;
+
+  public BulkWriter(Vertx vertx, MongoClient mongoClient, String collection, long window, int maxSize) {
+    this.vertx = vertx;
+    this.mongoClient = mongoClient;
+    this.collection = collection;
+    this.window = window;
+    this.maxSize = maxSize;
+  }
+
+  public void write(List<BulkOperation> batch, Handler<AsyncResult<Void>> handler) {
+    if (batch.isEmpty()) {
+      handler.handle(Future.succeededFuture());
+      return;
+    }
+    offsets.add(operations.size());
+    operations.addAll(batch);
+    // The bulk write is shared, but what follows each submission still runs on behalf of its operation
+    handlers.add(OperationContext.bind(handler));
+    if (operations.size() >= maxSize) {
+      flush();
+    } else if (timerId < 0) {
+      timerId = vertx.setTimer(window, id -> {
+        timerId = -1;
+        flush();
+      });
+    }
+  }
+
+  private void flush() {
+    if (timerId >= 0) {
+      vertx.cancelTimer(timerId);
+      timerId = -1;
+    }
+    List<BulkOperation> toWrite = operations;
+    List<Handler<AsyncResult<Void>>> toNotify = handlers;
+    List<Integer> toNotifyOffsets = offsets;
+    operations = new ArrayList<>();
+    handlers = new ArrayList<>();
+    offsets = new ArrayList<>();
+    Future<MongoClientBulkWriteResult> future = Future.future();
+    mongoClient.bulkWriteWithOptions(collection, toWrite, new BulkWriteOptions().setOrdered(false), future);
+    future.setHandler(ar -> {
+      List<AsyncResult<Void>> results = results(ar, toNotifyOffsets, toWrite.size());
+      for (int i = 0; i < toNotify.size(); i++) {
+        toNotify.get(i).handle(results.get(i));
+      }
+    });
+  }
+
+  /**
+   * Maps the outcome of a bulk write to the outcome of each submission, given the index of their first operation.
+   * Failures other than write errors, e.g. network errors, fail every submission.
+   */
+  static List<AsyncResult<Void>> results(AsyncResult<?> bulkWrite, List<Integer> offsets, int size) {
+    List<AsyncResult<Void>> results = new ArrayList<>(offsets.size());
+    if (bulkWrite.succeeded() || !(bulkWrite.cause() instanceof MongoBulkWriteException)) {
+      AsyncResult<Void> result = bulkWrite.map((Void) null);
+      offsets.forEach(offset -> results.add(result));
+      return results;
+    }
+    List<BulkWriteError> errors = ((MongoBulkWriteException) bulkWrite.cause()).getWriteErrors();
+    for (int i = 0; i < offsets.size(); i++) {
+      int start = offsets.get(i);
+      int end = i + 1 < offsets.size() ? offsets.get(i + 1) : size;
+      BulkWriteError error = errors.stream()
+        .filter(e -> e.getIndex() >= start && e.getIndex() < end)
+        .findFirst()
+        .orElse(null);
+      results.add(error == null ? Future.succeededFuture() : Future.failedFuture(error.getMessage()));
+    }
+    return results;
+  }
+}
@@ -0,0 +1,32 @@
+package com.howtographql;
+
+import io.vertx.core.Context;
+import org.dataloader.DataLoaderRegistry;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A registry shared by concurrent executions, e.g. the operations of a batch.
+ * <p>
+ * Each execution asks for a dispatch when one of its levels is done. Here the dispatch is deferred to the next
+ * task of the event loop and coalesced, so the loads queued meanwhile by all the executions go out together.
+ */
+public class CoalescingDataLoaderRegistry extends DataLoaderRegistry {
+
+  private final Context context;
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+
+  public CoalescingDataLoaderRegistry(Context context) {
+    this.context = context;
+  }
+
+  @Override
+  public void dispatchAll() {
+    if (scheduled.compareAndSet(false, true)) {
+      context.runOnContext(v -> {
+        scheduled.set(false);
+        super.dispatchAll();
+      });
+    }
+  }
+}
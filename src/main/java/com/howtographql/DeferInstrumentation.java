@@ -0,0 +1,257 @@
+package com.howtographql;
+
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.GraphQL;
+import graphql.GraphQLError;
+import graphql.execution.FieldValueInfo;
+import graphql.execution.defer.DeferredErrorSupport;
+import graphql.execution.instrumentation.DeferredFieldInstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationDeferredFieldParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.language.Field;
+import graphql.language.FragmentDefinition;
+import graphql.language.FragmentSpread;
+import graphql.language.InlineFragment;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+
+/**
+ * Execution side of {@code @defer}.
+ * <p>
+ * graphql-java publishes the results of deferred fields without their path: this instrumentation publishes them as
+ * {@link DeferredResult}s instead, each matched to the field it was computed for.
+ * <p>
+ * Deferred fields are resolved one after the other, so a deferred field loaded through a DataLoader would cost a
+ * batch per parent object. Fields registered with {@link #prefetch(String, BiConsumer)} are loaded in a single batch
+ * instead, as soon as the list holding their parents is fetched: the deferred fields then complete immediately.
+ */
+public class DeferInstrumentation extends SimpleInstrumentation {
+
+  private final Map<String, BiConsumer<DataFetchingEnvironment, List<?>>> prefetchers = new LinkedHashMap<>();
+
+  /**
+   * @param prefetcher called with the environment of a list field and the fetched list, when the selection of the
+   *                   list field has {@code fieldName} with {@code @defer}
+   */
+  public DeferInstrumentation prefetch(String fieldName, BiConsumer<DataFetchingEnvironment, List<?>> prefetcher) {
+    prefetchers.put(fieldName, prefetcher);
+    return this;
+  }
+
+  @Override
+  public InstrumentationState createState() {
+    return new DeferState();
+  }
+
+  @Override
+  public DataFetcher<?> instrumentDataFetcher(DataFetcher<?> dataFetcher, InstrumentationFieldFetchParameters parameters) {
+    List<BiConsumer<DataFetchingEnvironment, List<?>>> applicable = new ArrayList<>();
+    prefetchers.forEach((fieldName, prefetcher) -> {
+      if (isDeferred(parameters.getEnvironment(), fieldName)) {
+        applicable.add(prefetcher);
+      }
+    });
+    if (applicable.isEmpty()) {
+      return dataFetcher;
+    }
+    return env -> {
+      Object value = dataFetcher.get(env);
+      if (value instanceof CompletionStage) {
+        return ((CompletionStage<?>) value).thenApply(fetched -> {
+          prefetch(env, fetched, applicable);
+          return fetched;
+        });
+      }
+      prefetch(env, value, applicable);
+      return value;
+    };
+  }
+
+  private static void prefetch(DataFetchingEnvironment env, Object value, List<BiConsumer<DataFetchingEnvironment, List<?>>> prefetchers) {
+    if (value instanceof List) {
+      prefetchers.forEach(prefetcher -> prefetcher.accept(env, (List<?>) value));
+    }
+  }
+
+  @Override
+  public DeferredFieldInstrumentationContext beginDeferredField(InstrumentationDeferredFieldParameters parameters) {
+    DeferState state = parameters.getInstrumentationState();
+    DeferredField field = new DeferredField(parameters.getExecutionStrategyParameters().getPath().toList(),
+      parameters.getExecutionStrategyParameters().deferredErrorSupport());
+    state.add(field);
+    return new DeferredFieldInstrumentationContext() {
+      @Override
+      public void onFieldValueInfo(FieldValueInfo fieldValueInfo) {
+        // Called before the value can be published
+        field.value = fieldValueInfo.getFieldValue();
+      }
+
+      @Override
+      public void onDispatched(CompletableFuture<ExecutionResult> result) {
+      }
+
+      @Override
+      public void onCompleted(ExecutionResult result, Throwable t) {
+      }
+    };
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public CompletableFuture<ExecutionResult> instrumentExecutionResult(ExecutionResult executionResult, InstrumentationExecutionParameters parameters) {
+    Map<Object, Object> extensions = executionResult.getExtensions();
+    if (extensions == null || !extensions.containsKey(GraphQL.DEFERRED_RESULTS)) {
+      return CompletableFuture.completedFuture(executionResult);
+    }
+    DeferState state = parameters.getInstrumentationState();
+    Publisher<ExecutionResult> deferred = (Publisher<ExecutionResult>) extensions.get(GraphQL.DEFERRED_RESULTS);
+    Publisher<DeferredResult> withPaths = subscriber -> deferred.subscribe(new Subscriber<ExecutionResult>() {
+      @Override
+      public void onSubscribe(Subscription s) {
+        subscriber.onSubscribe(s);
+      }
+
+      @Override
+      public void onNext(ExecutionResult result) {
+        subscriber.onNext(new DeferredResult(state.remove(result), result));
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        subscriber.onError(t);
+      }
+
+      @Override
+      public void onComplete() {
+        subscriber.onComplete();
+      }
+    });
+    Map<Object, Object> instrumented = new LinkedHashMap<>(extensions);
+    instrumented.put(GraphQL.DEFERRED_RESULTS, withPaths);
+    return CompletableFuture.completedFuture(new ExecutionResultImpl(executionResult.getData(), executionResult.getErrors(), instrumented));
+  }
+
+  /**
+   * @return whether the fields being fetched select {@code name} with {@code @defer}, possibly through fragments
+   */
+  static boolean isDeferred(DataFetchingEnvironment env, String name) {
+    for (Field field : env.getFields()) {
+      if (field.getSelectionSet() != null && isDeferred(field.getSelectionSet(), name, env.getFragmentsByName())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isDeferred(SelectionSet selectionSet, String name, Map<String, FragmentDefinition> fragments) {
+    for (Selection<?> selection : selectionSet.getSelections()) {
+      if (selection instanceof Field) {
+        Field field = (Field) selection;
+        if (field.getName().equals(name) && field.getDirective("defer") != null) {
+          return true;
+        }
+      } else if (selection instanceof InlineFragment) {
+        if (isDeferred(((InlineFragment) selection).getSelectionSet(), name, fragments)) {
+          return true;
+        }
+      } else if (selection instanceof FragmentSpread) {
+        FragmentDefinition fragment = fragments.get(((FragmentSpread) selection).getName());
+        if (fragment != null && isDeferred(fragment.getSelectionSet(), name, fragments)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Result of a deferred field, with the path of the field.
+   */
+  public static class DeferredResult extends ExecutionResultImpl {
+
+    private final List<Object> path;
+
+    DeferredResult(List<Object> path, ExecutionResult result) {
+      super(result.getData(), result.getErrors(), result.getExtensions());
+      this.path = path;
+    }
+
+    /**
+     * @return the path of the field, {@code null} if it could not be matched to one of the deferred fields
+     */
+    public List<Object> getPath() {
+      return path;
+    }
+  }
+
+  private static class DeferredField {
+
+    final List<Object> path;
+    final DeferredErrorSupport errorSupport;
+    volatile CompletableFuture<ExecutionResult> value;
+
+    DeferredField(List<Object> path, DeferredErrorSupport errorSupport) {
+      this.path = path;
+      this.errorSupport = errorSupport;
+    }
+
+    boolean produced(ExecutionResult result) {
+      if (value != null && value.isDone() && !value.isCompletedExceptionally() && value.join() == result) {
+        return true;
+      }
+      // graphql-java publishes a copy of the value when the field had errors, with the errors of the field added
+      List<GraphQLError> errors = errorSupport.getErrors();
+      if (errors.isEmpty()) {
+        return false;
+      }
+      for (GraphQLError error : result.getErrors()) {
+        if (error == errors.get(0)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static class DeferState implements InstrumentationState {
+
+    private final List<DeferredField> fields = new ArrayList<>();
+
+    synchronized void add(DeferredField field) {
+      fields.add(field);
+    }
+
+    /**
+     * @return the path of the deferred field which produced {@code result}, {@code null} if none matches: the result
+     * is still delivered, rather than failing the rest of the response
+     */
+    synchronized List<Object> remove(ExecutionResult result) {
+      for (Iterator<DeferredField> it = fields.iterator(); it.hasNext(); ) {
+        DeferredField field = it.next();
+        if (field.produced(result)) {
+          it.remove();
+          return field.path;
+        }
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.howtographql;
+
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache of parsed and validated query documents, keyed by query text.
+ */
+public class DocumentCache implements PreparsedDocumentProvider {
+
+  private final int maxSize;
+  private final Map<String, PreparsedDocumentEntry> entries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public DocumentCache(int maxSize) {
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<String, PreparsedDocumentEntry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, PreparsedDocumentEntry> eldest) {
+        if (size() > DocumentCache.this.maxSize) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  @Override
+  public PreparsedDocumentEntry get(String query, Function<String, PreparsedDocumentEntry> compute) {
+    PreparsedDocumentEntry entry;
+    synchronized (entries) {
+      entry = entries.get(query);
+    }
+    if (entry != null) {
+      hits.incrementAndGet();
+      return entry;
+    }
+    misses.incrementAndGet();
+    // Parse and validate outside the lock, a concurrent miss on the same query only costs a redundant parse
+    entry = compute.apply(query);
+    synchronized (entries) {
+      entries.put(query, entry);
+    }
+    return entry;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.howtographql;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Fans out events to any number of reactive-streams subscribers.
+ * <p>
+ * Must be used from a single event loop. Each subscriber has its own demand: events arriving while a subscriber
+ * cannot accept more are kept in a small buffer, dropping the oldest when it is full, so a slow connection never
+ * holds back the others.
+ */
+public class EventStream<T> {
+
+  private final int bufferSize;
+  private final Set<EventSubscription> subscriptions = new LinkedHashSet<>();
+
+  public EventStream(int bufferSize) {
+    this.bufferSize = bufferSize;
+  }
+
+  public void emit(T event) {
+    for (EventSubscription subscription : new ArrayList<>(subscriptions)) {
+      subscription.offer(event);
+    }
+  }
+
+  public int subscriberCount() {
+    return subscriptions.size();
+  }
+
+  public Publisher<T> publisher() {
+    return subscriber -> {
+      EventSubscription subscription = new EventSubscription(subscriber);
+      subscriptions.add(subscription);
+      subscriber.onSubscribe(subscription);
+    };
+  }
+
+  private class EventSubscription implements Subscription {
+
+    final Subscriber<? super T> subscriber;
+    final ArrayDeque<T> buffer = new ArrayDeque<>();
+    long demand;
+
+    EventSubscription(Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    void offer(T event) {
+      if (demand > 0 && buffer.isEmpty()) {
+        demand--;
+        subscriber.onNext(event);
+      } else {
+        if (buffer.size() == bufferSize) {
+          buffer.poll();
+        }
+        buffer.add(event);
+      }
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        cancel();
+        subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+        return;
+      }
+      demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+      while (demand > 0 && !buffer.isEmpty() && subscriptions.contains(this)) {
+        demand--;
+        subscriber.onNext(buffer.poll());
+      }
+    }
+
+    @Override
+    public void cancel() {
+      subscriptions.remove(this);
+      buffer.clear();
+    }
+  }
+}
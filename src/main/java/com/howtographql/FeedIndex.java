@@ -0,0 +1,248 @@
+package com.howtographql;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory ranking of recent links for the front page, Hacker News style: {@code votes / (ageHours + 2)^gravity}.
+ * <p>
+ * The index is loaded once from the repository, then kept up to date from the {@link #LINK_CREATED} and
+ * {@link #VOTE_CREATED} event bus addresses; events received during the load are applied once it completes. It is
+ * driven by a {@link FeedIndexVerticle}: mutations happen on its event loop, and a periodic task re-ranks the links
+ * (scores decay with time) and publishes an immutable snapshot which any thread can read.
+ * <p>
+ * Pages are delimited by {@link Position}s rather than offsets. A position holds the time its ranking was computed,
+ * and the next pages are ranked at that same time, so that the decay doesn't move links across pages. The last
+ * rankings which served pages are retained, so that the next pages are a binary search away; older positions are
+ * re-ranked once, then retained as well.
+ */
+public class FeedIndex {
+
+  public static final String LINK_CREATED = "links.created";
+  public static final String VOTE_CREATED = "votes.created";
+
+  private static final double GRAVITY = 1.8;
+  private static final Comparator<RankedLink> RANKING = Comparator.comparing(RankedLink::getPosition);
+
+  private final Duration window;
+  private final long refreshPeriod;
+  private final Map<String, Entry> entries = new HashMap<>();
+  private final Map<Long, List<RankedLink>> retained;
+  private List<JsonObject> pendingVotes;
+  private volatile Snapshot snapshot = new Snapshot(0, Collections.emptyList());
+
+  /**
+   * @param maxRetained the number of rankings kept for the positions of the pages they served
+   */
+  public FeedIndex(Duration window, long refreshPeriod, int maxRetained) {
+    this.window = window;
+    this.refreshPeriod = refreshPeriod;
+    this.retained = new LinkedHashMap<Long, List<RankedLink>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, List<RankedLink>> eldest) {
+        return size() > maxRetained;
+      }
+    };
+  }
+
+  /**
+   * Loads the index and follows updates from the calling verticle, until it is undeployed.
+   *
+   * @param handler completes once the index is loaded; a failed load is logged, and the index then only holds the
+   *                links created afterwards
+   */
+  public void start(Vertx vertx, LinkRepository linkRepository, Handler<AsyncResult<Void>> handler) {
+    entries.clear();
+    pendingVotes = new ArrayList<>();
+    vertx.eventBus().<JsonObject>consumer(LINK_CREATED, msg -> {
+      JsonObject json = msg.body();
+      Link link = new Link(json.getString("id"), json.getString("url"), json.getString("description"), json.getString("postedBy"), 0);
+      entries.putIfAbsent(link.getId(), new Entry(link, LinkRepository.creationTime(link.getId())));
+    });
+    vertx.eventBus().<JsonObject>consumer(VOTE_CREATED, msg -> {
+      if (pendingVotes != null) {
+        pendingVotes.add(msg.body());
+      } else {
+        vote(msg.body());
+      }
+    });
+    linkRepository.findCreatedSince(Instant.now().minus(window), ar -> {
+      if (ar.succeeded()) {
+        for (Link link : ar.result()) {
+          Entry entry = new Entry(link, LinkRepository.creationTime(link.getId()));
+          entry.votes = link.getVoteCount() == null ? 0 : link.getVoteCount();
+          entries.put(link.getId(), entry);
+        }
+      } else {
+        ar.cause().printStackTrace();
+      }
+      // A vote stored just before its link was read is counted twice, which the ranking can live with
+      pendingVotes.forEach(this::vote);
+      pendingVotes = null;
+      rank();
+      handler.handle(Future.succeededFuture());
+    });
+    vertx.setPeriodic(refreshPeriod, id -> rank());
+  }
+
+  private void vote(JsonObject json) {
+    Entry entry = entries.get(json.getString("linkId"));
+    if (entry != null) {
+      entry.votes++;
+    }
+  }
+
+  /**
+   * @param after the position of the last link of the previous page, {@code null} for the first page
+   * @return up to {@code limit} links ranked after {@code after}, most relevant first
+   */
+  public List<RankedLink> page(Position after, int limit) {
+    Snapshot current = snapshot;
+    List<RankedLink> ranked = ranking(current, after == null ? current.rankedAt : after.rankedAt);
+    int start = 0;
+    if (after != null) {
+      start = Collections.binarySearch(ranked, new RankedLink(null, null, after), RANKING);
+      start = start >= 0 ? start + 1 : -start - 1;
+    }
+    return ranked.subList(start, Math.min(ranked.size(), start + limit));
+  }
+
+  private List<RankedLink> ranking(Snapshot current, long rankedAt) {
+    synchronized (retained) {
+      List<RankedLink> ranked = retained.get(rankedAt);
+      if (ranked != null) {
+        return ranked;
+      }
+      if (rankedAt == current.rankedAt) {
+        retained.put(rankedAt, current.links);
+        return current.links;
+      }
+    }
+    List<RankedLink> ranked = rank(current.links, rankedAt);
+    synchronized (retained) {
+      retained.put(rankedAt, ranked);
+    }
+    return ranked;
+  }
+
+  private void rank() {
+    long now = System.currentTimeMillis();
+    Instant oldest = Instant.ofEpochMilli(now).minus(window);
+    entries.values().removeIf(entry -> entry.createdAt.isBefore(oldest));
+    List<RankedLink> links = new ArrayList<>(entries.size());
+    for (Entry entry : entries.values()) {
+      Link link = entry.link;
+      links.add(new RankedLink(new Link(link.getId(), link.getUrl(), link.getDescription(), link.getUserId(), entry.votes), entry.createdAt, null));
+    }
+    snapshot = new Snapshot(now, rank(links, now));
+  }
+
+  /**
+   * @return the links sorted by their score at {@code rankedAt}
+   */
+  static List<RankedLink> rank(List<RankedLink> links, long rankedAt) {
+    List<RankedLink> ranked = new ArrayList<>(links.size());
+    for (RankedLink rankedLink : links) {
+      Link link = rankedLink.link;
+      double ageHours = Math.max(0, rankedAt - rankedLink.createdAt.toEpochMilli()) / 3_600_000d;
+      double score = link.getVoteCount() / Math.pow(ageHours + 2, GRAVITY);
+      ranked.add(new RankedLink(link, rankedLink.createdAt, new Position(rankedAt, score, link.getId())));
+    }
+    ranked.sort(RANKING);
+    return Collections.unmodifiableList(ranked);
+  }
+
+  /**
+   * Place of a link in a ranking: by decreasing score, then by id.
+   */
+  public static class Position implements Comparable<Position> {
+
+    private final long rankedAt;
+    private final double score;
+    private final String linkId;
+
+    Position(long rankedAt, double score, String linkId) {
+      this.rankedAt = rankedAt;
+      this.score = score;
+      this.linkId = linkId;
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code value} was not returned by {@link #encode()}
+     */
+    public static Position decode(String value) {
+      String[] parts = value.split(":", 3);
+      if (parts.length != 3) {
+        throw new IllegalArgumentException(value);
+      }
+      return new Position(Long.parseLong(parts[0]), Double.parseDouble(parts[1]), parts[2]);
+    }
+
+    public String encode() {
+      return rankedAt + ":" + score + ":" + linkId;
+    }
+
+    @Override
+    public int compareTo(Position other) {
+      int byScore = Double.compare(other.score, score);
+      return byScore != 0 ? byScore : linkId.compareTo(other.linkId);
+    }
+  }
+
+  public static class RankedLink {
+
+    private final Link link;
+    private final Instant createdAt;
+    private final Position position;
+
+    RankedLink(Link link, Instant createdAt, Position position) {
+      this.link = link;
+      this.createdAt = createdAt;
+      this.position = position;
+    }
+
+    public Link getLink() {
+      return link;
+    }
+
+    public Position getPosition() {
+      return position;
+    }
+  }
+
+  private static class Snapshot {
+
+    final long rankedAt;
+    final List<RankedLink> links;
+
+    Snapshot(long rankedAt, List<RankedLink> links) {
+      this.rankedAt = rankedAt;
+      this.links = links;
+    }
+  }
+
+  private static class Entry {
+
+    final Link link;
+    final Instant createdAt;
+    int votes;
+
+    Entry(Link link, Instant createdAt) {
+      this.link = link;
+      this.createdAt = createdAt;
+    }
+  }
+}
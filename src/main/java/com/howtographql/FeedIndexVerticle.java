@@ -0,0 +1,38 @@
+package com.howtographql;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.MongoClient;
+
+/**
+ * Keeps the shared {@link FeedIndex} up to date, deployed once by {@link Main} next to the {@link Server} instances.
+ * <p>
+ * The index consumers and ranking timer belong to this verticle, so they don't go away with one of the servers.
+ */
+public class FeedIndexVerticle extends AbstractVerticle {
+
+  @Override
+  public void start(Future<Void> startFuture) {
+    SharedResources sharedResources = SharedResources.get(vertx, config());
+    MemoryStore memoryStore = sharedResources.getMemoryStore();
+    LinkRepository linkRepository;
+    if (memoryStore != null) {
+      linkRepository = new MemoryLinkRepository(memoryStore);
+    } else {
+      MongoClient mongoClient = MongoMetrics.wrap(createMongoClient(), sharedResources.getMetrics(),
+        sharedResources.getAdmissionController().getPendingMongoCalls());
+      linkRepository = new MongoLinkRepository(mongoClient, LinkRepository.SearchStrategy.REGEX);
+    }
+    sharedResources.getFeedIndex().start(vertx, linkRepository, startFuture);
+  }
+
+  @Override
+  public void stop() {
+    SharedResources.release(vertx);
+  }
+
+  protected MongoClient createMongoClient() {
+    return MongoClient.createShared(vertx, config().getJsonObject("mongo", new JsonObject()));
+  }
+}
@@ -0,0 +1,188 @@
+package com.howtographql;
+
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.Json;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Delivers the results of {@code @defer} fields after the initial result, as parts of a {@code multipart/mixed}
+ * response.
+ * <p>
+ * Parts follow the incremental delivery format of Apollo Client ({@code deferSpec=20220824}): the initial result
+ * has {@code hasNext: true}, each deferred field comes as an {@code incremental} entry with the path of its parent
+ * object, and a last part has {@code hasNext: false}. Clients which don't accept multipart responses get the merged
+ * result in a single JSON document.
+ */
+public class IncrementalDelivery {
+
+  public static final String CONTENT_TYPE = "multipart/mixed; boundary=\"-\"; deferSpec=20220824";
+
+  private static final Buffer PART_START = Buffer.buffer("\r\n---\r\nContent-Type: application/json; charset=utf-8\r\n\r\n");
+  private static final Buffer END = Buffer.buffer("\r\n-----\r\n");
+
+  /**
+   * @return the results of the deferred fields of an operation, {@code null} if it has none
+   */
+  @SuppressWarnings("unchecked")
+  public static Publisher<DeferInstrumentation.DeferredResult> deferredResults(ExecutionResult executionResult) {
+    Map<Object, Object> extensions = executionResult.getExtensions();
+    return extensions == null ? null : (Publisher<DeferInstrumentation.DeferredResult>) extensions.get(GraphQL.DEFERRED_RESULTS);
+  }
+
+  public static boolean accepts(HttpServerRequest request) {
+    String accept = request.getHeader(HttpHeaders.ACCEPT);
+    return accept != null && accept.contains("multipart/mixed");
+  }
+
+  /**
+   * Writes the initial result right away, then each deferred result as it completes.
+   * <p>
+   * Deferred results are requested one at a time, and not while the response write queue is full.
+   *
+   * @return completes when the response has ended, or the client went away
+   */
+  public static CompletableFuture<Void> write(HttpServerResponse response, Map<String, Object> initial, Publisher<DeferInstrumentation.DeferredResult> deferred) {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    response.setChunked(true).putHeader(HttpHeaders.CONTENT_TYPE, CONTENT_TYPE);
+    Map<String, Object> first = new LinkedHashMap<>(initial);
+    first.put("hasNext", true);
+    writePart(response, first);
+    deferred.subscribe(new Subscriber<DeferInstrumentation.DeferredResult>() {
+
+      Subscription subscription;
+
+      @Override
+      public void onSubscribe(Subscription s) {
+        subscription = s;
+        response.closeHandler(v -> {
+          s.cancel();
+          done.complete(null);
+        });
+        s.request(1);
+      }
+
+      @Override
+      public void onNext(DeferInstrumentation.DeferredResult result) {
+        Map<String, Object> part = new LinkedHashMap<>();
+        part.put("incremental", Collections.singletonList(incremental(result)));
+        part.put("hasNext", true);
+        writePart(response, part);
+        if (response.writeQueueFull()) {
+          response.drainHandler(v -> subscription.request(1));
+        } else {
+          subscription.request(1);
+        }
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("errors", Collections.singletonList(Collections.singletonMap("message", String.valueOf(t.getMessage()))));
+        error.put("hasNext", false);
+        writePart(response, error);
+        end();
+      }
+
+      @Override
+      public void onComplete() {
+        writePart(response, Collections.singletonMap("hasNext", false));
+        end();
+      }
+
+      void end() {
+        response.end(END);
+        done.complete(null);
+      }
+    });
+    return done;
+  }
+
+  /**
+   * Waits for the deferred results and sets them into the initial result.
+   */
+  @SuppressWarnings("unchecked")
+  public static CompletableFuture<Map<String, Object>> merge(Map<String, Object> initial, Publisher<DeferInstrumentation.DeferredResult> deferred) {
+    CompletableFuture<Map<String, Object>> merged = new CompletableFuture<>();
+    deferred.subscribe(new Subscriber<DeferInstrumentation.DeferredResult>() {
+
+      @Override
+      public void onSubscribe(Subscription s) {
+        s.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(DeferInstrumentation.DeferredResult result) {
+        Map<String, Object> incremental = incremental(result);
+        List<Object> path = (List<Object>) incremental.get("path");
+        // Without a path, there is no telling where the data goes: only the errors are kept
+        Object parent = path == null ? null : initial.get("data");
+        for (int i = 0; path != null && i < path.size() && parent != null; i++) {
+          Object segment = path.get(i);
+          parent = segment instanceof Integer ? ((List<Object>) parent).get((Integer) segment) : ((Map<String, Object>) parent).get(segment);
+        }
+        if (parent instanceof Map && incremental.get("data") != null) {
+          ((Map<String, Object>) parent).putAll((Map<String, Object>) incremental.get("data"));
+        }
+        List<Object> errors = (List<Object>) incremental.get("errors");
+        if (errors != null) {
+          List<Object> all = new ArrayList<>();
+          Object existing = initial.get("errors");
+          if (existing != null) {
+            all.addAll((List<Object>) existing);
+          }
+          all.addAll(errors);
+          initial.put("errors", all);
+        }
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        merged.completeExceptionally(t);
+      }
+
+      @Override
+      public void onComplete() {
+        merged.complete(initial);
+      }
+    });
+    return merged;
+  }
+
+  /**
+   * @return the result of a deferred field, as its value in its parent object, or as is without a path when its
+   * field is unknown
+   */
+  private static Map<String, Object> incremental(DeferInstrumentation.DeferredResult result) {
+    List<Object> path = result.getPath();
+    Map<String, Object> specification = result.toSpecification();
+    Map<String, Object> incremental = new LinkedHashMap<>();
+    if (path == null) {
+      incremental.put("data", specification.get("data"));
+    } else {
+      incremental.put("data", Collections.singletonMap((String) path.get(path.size() - 1), specification.get("data")));
+      incremental.put("path", path.subList(0, path.size() - 1));
+    }
+    if (specification.containsKey("errors")) {
+      incremental.put("errors", specification.get("errors"));
+    }
+    return incremental;
+  }
+
+  private static void writePart(HttpServerResponse response, Map<String, ?> part) {
+    response.write(PART_START.copy().appendBuffer(Json.encodeToBuffer(part)));
+  }
+}
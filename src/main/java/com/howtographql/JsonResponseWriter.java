@@ -0,0 +1,145 @@
+package com.howtographql;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.Json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Streams an execution result straight into a chunked {@link HttpServerResponse}.
+ * <p>
+ * The result tree is walked iteratively so that serialization can pause when the write queue is full and resume
+ * when it drains, instead of materializing the whole document in memory first.
+ */
+public class JsonResponseWriter {
+
+  private static final int CHUNK_SIZE = 8192;
+
+  private final HttpServerResponse response;
+  private final JsonGenerator generator;
+  private final Deque<Frame> stack = new ArrayDeque<>();
+  private Buffer pending = Buffer.buffer(CHUNK_SIZE);
+
+  private JsonResponseWriter(HttpServerResponse response) throws IOException {
+    this.response = response;
+    this.generator = Json.mapper.getFactory().createGenerator(new ChunkOutputStream());
+  }
+
+  public static void write(HttpServerResponse response, Object result) {
+    JsonResponseWriter writer;
+    try {
+      writer = new JsonResponseWriter(response);
+    } catch (IOException e) {
+      response.setStatusCode(500).end();
+      return;
+    }
+    response.setChunked(true).putHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+    writer.start(result);
+  }
+
+  private void start(Object value) {
+    try {
+      writeValue(value);
+    } catch (IOException e) {
+      response.close();
+      return;
+    }
+    resume();
+  }
+
+  private void resume() {
+    response.drainHandler(null);
+    try {
+      while (!stack.isEmpty()) {
+        if (response.closed()) {
+          return;
+        }
+        if (response.writeQueueFull()) {
+          generator.flush();
+          flushPending();
+          response.drainHandler(v -> resume());
+          return;
+        }
+        Frame frame = stack.peek();
+        if (frame.iterator.hasNext()) {
+          Object next = frame.iterator.next();
+          if (frame.object) {
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) next;
+            generator.writeFieldName(String.valueOf(entry.getKey()));
+            writeValue(entry.getValue());
+          } else {
+            writeValue(next);
+          }
+        } else {
+          stack.pop();
+          if (frame.object) {
+            generator.writeEndObject();
+          } else {
+            generator.writeEndArray();
+          }
+        }
+      }
+      generator.close();
+      response.end(pending);
+    } catch (IOException e) {
+      response.close();
+    }
+  }
+
+  private void writeValue(Object value) throws IOException {
+    if (value instanceof Map) {
+      generator.writeStartObject();
+      stack.push(new Frame(true, ((Map<?, ?>) value).entrySet().iterator()));
+    } else if (value instanceof Iterable) {
+      generator.writeStartArray();
+      stack.push(new Frame(false, ((Iterable<?>) value).iterator()));
+    } else {
+      generator.writeObject(value);
+    }
+  }
+
+  private void flushPending() {
+    if (pending.length() > 0) {
+      response.write(pending);
+      pending = Buffer.buffer(CHUNK_SIZE);
+    }
+  }
+
+  private static class Frame {
+
+    final boolean object;
+    final Iterator<?> iterator;
+
+    Frame(boolean object, Iterator<?> iterator) {
+      this.object = object;
+      this.iterator = iterator;
+    }
+  }
+
+  private class ChunkOutputStream extends OutputStream {
+
+    @Override
+    public void write(int b) {
+      pending.appendByte((byte) b);
+      if (pending.length() >= CHUNK_SIZE) {
+        flushPending();
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      pending.appendBytes(b, off, len);
+      if (pending.length() >= CHUNK_SIZE) {
+        flushPending();
+      }
+    }
+  }
+}
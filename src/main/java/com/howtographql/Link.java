@@ -6,16 +6,22 @@ public class Link {
   private final String url;
   private final String description;
   private final String userId;
+  private final Integer voteCount;
 
   public Link(String url, String description, String userId) {
     this(null, url, description, userId);
   }
 
   public Link(String id, String url, String description, String userId) {
+    this(id, url, description, userId, null);
+  }
+
+  public Link(String id, String url, String description, String userId, Integer voteCount) {
     this.id = id;
     this.url = url;
     this.description = description;
     this.userId = userId;
+    this.voteCount = voteCount;
   }
 
   public String getId() {
@@ -33,4 +39,11 @@ public class Link {
   public String getUserId() {
     return userId;
   }
+
+  /**
+   * @return the vote counter maintained on the link document, or {@code null} for links created before it existed
+   */
+  public Integer getVoteCount() {
+    return voteCount;
+  }
 }
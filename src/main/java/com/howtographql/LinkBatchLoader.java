@@ -0,0 +1,33 @@
+package com.howtographql;
+
+import org.dataloader.MappedBatchLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Loads links by id with one {@code $in} query. Results are keyed by id, since the query returns documents in any
+ * order and skips missing ids.
+ */
+public class LinkBatchLoader implements MappedBatchLoader<String, Link> {
+
+  private final LinkRepository linkRepository;
+
+  public LinkBatchLoader(LinkRepository linkRepository) {
+    this.linkRepository = linkRepository;
+  }
+
+  @Override
+  public CompletionStage<Map<String, Link>> load(Set<String> keys) {
+    CompletableFuture<List<Link>> future = new CompletableFuture<>();
+    linkRepository.findByIds(new ArrayList<>(keys), Utils.toHandler(future));
+    return future.thenApply(links -> links.stream().collect(toMap(Link::getId, identity())));
+  }
+}
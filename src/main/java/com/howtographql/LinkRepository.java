@@ -1,65 +1,79 @@
 package com.howtographql;
 
 import io.vertx.core.AsyncResult;
-import io.vertx.core.Future;
 import io.vertx.core.Handler;
-import io.vertx.core.json.JsonObject;
-import io.vertx.ext.mongo.FindOptions;
-import io.vertx.ext.mongo.MongoClient;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
-import static java.util.stream.Collectors.toList;
+/**
+ * Storage of links, see {@link MongoLinkRepository} and {@link MemoryLinkRepository}.
+ */
+public interface LinkRepository {
 
-public class LinkRepository {
+  /**
+   * How {@code description_contains} / {@code url_contains} filters are served.
+   */
+  enum SearchStrategy {
+    /**
+     * Escaped, unanchored regular expressions: exact substring semantics, but a collection scan.
+     */
+    REGEX,
+    /**
+     * Phrase search on the text index, refined by the regular expressions: uses the index, but only matches whole words.
+     */
+    TEXT
+  }
 
-  private final MongoClient mongoClient;
+  void createIndexes(Handler<AsyncResult<Void>> handler);
 
-  public LinkRepository(MongoClient mongoClient) {
-    this.mongoClient = mongoClient;
-  }
+  /**
+   * @return the strategy serving this filter, or {@code null} if the filter does not search
+   */
+  SearchStrategy searchStrategy(LinkFilter filter);
 
-  public void findById(String id, Handler<AsyncResult<Link>> handler) {
-    JsonObject query = new JsonObject().put("_id", id);
-    Future<JsonObject> future = Future.future();
-    mongoClient.findOne("links", query, null, future);
-    future.map(json -> link(json)).setHandler(handler);
-  }
+  void findById(String id, Handler<AsyncResult<Link>> handler);
 
-  public void getAllLinks(LinkFilter filter, int skip, int first, Handler<AsyncResult<List<Link>>> handler) {
-    Future<List<JsonObject>> future = Future.future();
-    mongoClient.findWithOptions("links", buildFilter(filter), new FindOptions().setSkip(skip).setLimit(first), future);
-    future.map(list -> list.stream().map(this::link).collect(toList())).setHandler(handler);
-  }
+  void findByIds(List<String> ids, Handler<AsyncResult<List<Link>>> handler);
 
-  private JsonObject buildFilter(LinkFilter filter) {
-    JsonObject query = new JsonObject();
-    if (filter == null) {
-      return query;
-    }
-    String descriptionPattern = filter.getDescriptionContains();
-    String urlPattern = filter.getUrlContains();
-    if (descriptionPattern != null && !descriptionPattern.isEmpty()) {
-      query.put("description", new JsonObject().put("$regex", ".*" + descriptionPattern + ".*"));
-    }
-    if (urlPattern != null && !urlPattern.isEmpty()) {
-      query.put("url", new JsonObject().put("$regex", ".*" + urlPattern + ".*"));
-    }
-    return query;
-  }
+  void findByUserId(String userId, Handler<AsyncResult<List<Link>>> handler);
 
-  public void saveLink(Link link, Handler<AsyncResult<Link>> handler) {
-    Future<String> future = Future.future();
-    JsonObject doc = new JsonObject().put("url", link.getUrl()).put("description", link.getDescription()).put("postedBy", link.getUserId());
-    mongoClient.insert("links", doc, future);
-    future.map(id -> link(doc.put("_id", id))).setHandler(handler);
+  /**
+   * Fields outside the projection may be {@code null}.
+   */
+  void getAllLinks(LinkFilter filter, int skip, int first, Projection projection, Handler<AsyncResult<List<Link>>> handler);
+
+  /**
+   * Keyset pagination: the page holds the links whose id is greater than {@code afterId}, in id order.
+   */
+  void getLinksAfter(LinkFilter filter, String afterId, int first, Handler<AsyncResult<List<Link>>> handler);
+
+  void findCreatedSince(Instant instant, Handler<AsyncResult<List<Link>>> handler);
+
+  void saveLink(Link link, Handler<AsyncResult<Link>> handler);
+
+  void saveLinks(List<Link> links, Handler<AsyncResult<List<Link>>> handler);
+
+  void incrementVoteCounts(Map<String, Long> increments, Handler<AsyncResult<Void>> handler);
+
+  /**
+   * @return the creation time embedded in a generated link id, or the current time if the id is not an ObjectId
+   */
+  static Instant creationTime(String id) {
+    if (id != null && id.length() == 24) {
+      try {
+        return Instant.ofEpochSecond(Long.parseLong(id.substring(0, 8), 16));
+      } catch (NumberFormatException ignored) {
+      }
+    }
+    return Instant.now();
   }
 
-  private Link link(JsonObject doc) {
-    return new Link(
-      doc.getString("_id"),
-      doc.getString("url"),
-      doc.getString("description"),
-      doc.getString("postedBy"));
+  /**
+   * @return the smallest generated id created at or after {@code instant}
+   */
+  static String minId(Instant instant) {
+    return String.format("%08x", instant.getEpochSecond()) + "0000000000000000";
   }
 }
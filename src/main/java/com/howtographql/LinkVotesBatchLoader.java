@@ -0,0 +1,50 @@
+package com.howtographql;
+
+import org.dataloader.MappedBatchLoader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Loads pages of the votes of several links. Keys asking for the same page are loaded with one repository call;
+ * links without votes are missing from the result.
+ */
+public class LinkVotesBatchLoader implements MappedBatchLoader<LinkVotesKey, List<Vote>> {
+
+  private final VoteRepository voteRepository;
+
+  public LinkVotesBatchLoader(VoteRepository voteRepository) {
+    this.voteRepository = voteRepository;
+  }
+
+  @Override
+  public CompletionStage<Map<LinkVotesKey, List<Vote>>> load(Set<LinkVotesKey> keys) {
+    Map<List<Object>, List<String>> linkIdsByPage = new LinkedHashMap<>();
+    for (LinkVotesKey key : keys) {
+      List<Object> page = new ArrayList<>(2);
+      page.add(key.getAfterId());
+      page.add(key.getFirst());
+      linkIdsByPage.computeIfAbsent(page, p -> new ArrayList<>()).add(key.getLinkId());
+    }
+    Map<LinkVotesKey, List<Vote>> result = new HashMap<>();
+    List<CompletableFuture<Void>> futures = new ArrayList<>(linkIdsByPage.size());
+    linkIdsByPage.forEach((page, linkIds) -> {
+      String afterId = (String) page.get(0);
+      int first = (Integer) page.get(1);
+      CompletableFuture<Map<String, List<Vote>>> future = new CompletableFuture<>();
+      voteRepository.findByLinkIds(linkIds, afterId, first, Utils.toHandler(future));
+      futures.add(future.thenAccept(votes -> {
+        synchronized (result) {
+          votes.forEach((linkId, list) -> result.put(new LinkVotesKey(linkId, afterId, first), list));
+        }
+      }));
+    });
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> result);
+  }
+}
@@ -0,0 +1,51 @@
+package com.howtographql;
+
+import java.util.Objects;
+
+/**
+ * Key of the {@code linkVotes} DataLoader: a page of the votes of a link.
+ */
+public class LinkVotesKey {
+
+  private final String linkId;
+  private final String afterId;
+  private final int first;
+
+  public LinkVotesKey(String linkId, String afterId, int first) {
+    this.linkId = linkId;
+    this.afterId = afterId;
+    this.first = first;
+  }
+
+  public String getLinkId() {
+    return linkId;
+  }
+
+  /**
+   * @return the id of the last vote of the previous page, {@code null} for the first page
+   */
+  public String getAfterId() {
+    return afterId;
+  }
+
+  public int getFirst() {
+    return first;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof LinkVotesKey)) {
+      return false;
+    }
+    LinkVotesKey that = (LinkVotesKey) o;
+    return linkId.equals(that.linkId) && Objects.equals(afterId, that.afterId) && first == that.first;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * linkId.hashCode() + Objects.hashCode(afterId)) + first;
+  }
+}
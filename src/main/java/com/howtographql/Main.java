@@ -0,0 +1,34 @@
+package com.howtographql;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+
+/**
+ * Deploys the {@link FeedIndexVerticle}, then one {@link Server} instance per core (or {@code instances} from the
+ * config), all sharing the HTTP port.
+ */
+public class Main extends AbstractVerticle {
+
+  @Override
+  public void start(Future<Void> startFuture) {
+    int instances = config().getInteger("instances", Runtime.getRuntime().availableProcessors());
+    DeploymentOptions options = new DeploymentOptions()
+      .setConfig(config())
+      .setInstances(instances);
+    Future<String> feedIndex = Future.future();
+    vertx.deployVerticle(FeedIndexVerticle.class.getName(), new DeploymentOptions().setConfig(config()), feedIndex);
+    feedIndex.compose(id -> {
+      Future<String> servers = Future.future();
+      vertx.deployVerticle(Server.class.getName(), options, servers);
+      return servers;
+    }).setHandler(ar -> {
+      if (ar.succeeded()) {
+        System.out.println("Deployed " + instances + " server instance(s)");
+        startFuture.complete();
+      } else {
+        startFuture.fail(ar.cause());
+      }
+    });
+  }
+}
@@ -0,0 +1,130 @@
+package com.howtographql;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import org.bson.types.ObjectId;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Links of a {@link MemoryStore}. Search filters are substring matches on the whole store, with the semantics of
+ * {@link SearchStrategy#REGEX}.
+ */
+public class MemoryLinkRepository implements LinkRepository {
+
+  private final MemoryStore store;
+
+  public MemoryLinkRepository(MemoryStore store) {
+    this.store = store;
+  }
+
+  @Override
+  public void createIndexes(Handler<AsyncResult<Void>> handler) {
+    handler.handle(Future.succeededFuture());
+  }
+
+  @Override
+  public SearchStrategy searchStrategy(LinkFilter filter) {
+    if (filter == null || (isEmpty(filter.getDescriptionContains()) && isEmpty(filter.getUrlContains()))) {
+      return null;
+    }
+    return SearchStrategy.REGEX;
+  }
+
+  @Override
+  public void findById(String id, Handler<AsyncResult<Link>> handler) {
+    handler.handle(Future.succeededFuture(store.link(id)));
+  }
+
+  @Override
+  public void findByIds(List<String> ids, Handler<AsyncResult<List<Link>>> handler) {
+    List<Link> links = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      Link link = store.link(id);
+      if (link != null) {
+        links.add(link);
+      }
+    }
+    handler.handle(Future.succeededFuture(links));
+  }
+
+  @Override
+  public void findByUserId(String userId, Handler<AsyncResult<List<Link>>> handler) {
+    handler.handle(Future.succeededFuture(store.linksByUser(userId)));
+  }
+
+  @Override
+  public void getAllLinks(LinkFilter filter, int skip, int first, Projection projection, Handler<AsyncResult<List<Link>>> handler) {
+    handler.handle(Future.succeededFuture(page(store.links(), filter, skip, first)));
+  }
+
+  @Override
+  public void getLinksAfter(LinkFilter filter, String afterId, int first, Handler<AsyncResult<List<Link>>> handler) {
+    handler.handle(Future.succeededFuture(page(store.linksAfter(afterId, false), filter, 0, first)));
+  }
+
+  @Override
+  public void findCreatedSince(Instant instant, Handler<AsyncResult<List<Link>>> handler) {
+    handler.handle(Future.succeededFuture(new ArrayList<>(store.linksAfter(LinkRepository.minId(instant), true))));
+  }
+
+  private static List<Link> page(Collection<Link> links, LinkFilter filter, int skip, int first) {
+    Predicate<Link> predicate = matcher(filter);
+    List<Link> page = new ArrayList<>(Math.min(first, 64));
+    int skipped = 0;
+    for (Link link : links) {
+      if (page.size() == first) {
+        break;
+      }
+      if (predicate.test(link) && skipped++ >= skip) {
+        page.add(link);
+      }
+    }
+    return page;
+  }
+
+  private static Predicate<Link> matcher(LinkFilter filter) {
+    String description = filter == null ? null : filter.getDescriptionContains();
+    String url = filter == null ? null : filter.getUrlContains();
+    return link -> contains(link.getDescription(), description) && contains(link.getUrl(), url);
+  }
+
+  private static boolean contains(String value, String pattern) {
+    return isEmpty(pattern) || (value != null && value.contains(pattern));
+  }
+
+  private static boolean isEmpty(String s) {
+    return s == null || s.isEmpty();
+  }
+
+  @Override
+  public void saveLink(Link link, Handler<AsyncResult<Link>> handler) {
+    Future<List<Link>> future = Future.future();
+    saveLinks(Collections.singletonList(link), future);
+    future.map(list -> list.get(0)).setHandler(handler);
+  }
+
+  @Override
+  public void saveLinks(List<Link> links, Handler<AsyncResult<List<Link>>> handler) {
+    List<Link> saved = links.stream()
+      .map(link -> new Link(new ObjectId().toHexString(), link.getUrl(), link.getDescription(), link.getUserId(), 0))
+      .collect(toList());
+    Future<Void> future = Future.future();
+    store.insertLinks(saved, future);
+    future.map(v -> saved).setHandler(handler);
+  }
+
+  @Override
+  public void incrementVoteCounts(Map<String, Long> increments, Handler<AsyncResult<Void>> handler) {
+    store.incrementVoteCounts(increments, handler);
+  }
+}
@@ -0,0 +1,277 @@
+package com.howtographql;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Users, links and votes held in concurrent maps, with secondary indexes on user email, link poster and vote link
+ * and user.
+ * <p>
+ * Reads are lock-free and can happen on any thread. Writes are serialized, so that the optional {@link AppendLog}
+ * records them in the order they were applied. With a directory, the store is loaded on startup from the last
+ * snapshot and the log written after it, then compacted into a new snapshot: the log only holds the writes of the
+ * current run.
+ */
+public class MemoryStore {
+
+  private static final String SNAPSHOT = "snapshot.jsonl";
+
+  // Generated ids sort by creation time, like the natural order of the Mongo collection
+  private final NavigableMap<String, Link> links = new ConcurrentSkipListMap<>();
+  private final ConcurrentMap<String, User> users = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Vote> votes = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, String> userIdsByEmail = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Set<String>> linkIdsByUser = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Set<String>> voteIdsByLink = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Set<String>> voteIdsByUser = new ConcurrentHashMap<>();
+  private AppendLog log;
+
+  /**
+   * Opens a store persisted in {@code directory}, created if needed.
+   */
+  public static MemoryStore open(Path directory, boolean fsync) throws IOException {
+    Files.createDirectories(directory);
+    MemoryStore store = new MemoryStore();
+    Path snapshot = directory.resolve(SNAPSHOT);
+    long[] generation = {0};
+    AppendLog.replay(snapshot, entry -> {
+      if (entry.containsKey("snapshot")) {
+        generation[0] = entry.getJsonObject("snapshot").getLong("log");
+      } else {
+        store.apply(entry);
+      }
+    });
+    Path log = logFile(directory, generation[0]);
+    AppendLog.replay(log, store::apply);
+    store.backfillVoteCounts();
+
+    // The new snapshot names the next log, so a crash before the old one is deleted cannot replay it twice
+    long next = generation[0] + 1;
+    List<JsonObject> entries = new ArrayList<>();
+    entries.add(new JsonObject().put("snapshot", new JsonObject().put("log", next)));
+    store.users.values().forEach(user -> entries.add(insert("users", userDoc(user))));
+    store.links.values().forEach(link -> entries.add(insert("links", linkDoc(link))));
+    store.votes.values().forEach(vote -> entries.add(insert("votes", voteDoc(vote))));
+    AppendLog.write(snapshot, entries);
+    Files.deleteIfExists(log);
+    store.log = new AppendLog(logFile(directory, next), fsync);
+    return store;
+  }
+
+  /**
+   * Sets the vote counters of the links stored before they existed; the snapshot then persists them.
+   */
+  private void backfillVoteCounts() {
+    links.replaceAll((id, link) -> link.getVoteCount() != null ? link
+      : new Link(id, link.getUrl(), link.getDescription(), link.getUserId(), votesByLink(id).size()));
+  }
+
+  private static Path logFile(Path directory, long generation) {
+    return directory.resolve("log-" + generation + ".jsonl");
+  }
+
+  public Link link(String id) {
+    return links.get(id);
+  }
+
+  /**
+   * @return the links in id order
+   */
+  public Collection<Link> links() {
+    return links.values();
+  }
+
+  /**
+   * @return the links whose id is greater than {@code id} (or equal when {@code inclusive}), in id order
+   */
+  public Collection<Link> linksAfter(String id, boolean inclusive) {
+    return id == null ? links.values() : links.tailMap(id, inclusive).values();
+  }
+
+  public List<Link> linksByUser(String userId) {
+    return lookup(linkIdsByUser, userId, links);
+  }
+
+  public User user(String id) {
+    return users.get(id);
+  }
+
+  public User userByEmail(String email) {
+    String id = userIdsByEmail.get(email);
+    return id == null ? null : users.get(id);
+  }
+
+  public List<Vote> votesByLink(String linkId) {
+    return lookup(voteIdsByLink, linkId, votes);
+  }
+
+  public List<Vote> votesByUser(String userId) {
+    return lookup(voteIdsByUser, userId, votes);
+  }
+
+  public int linkCount() {
+    return links.size();
+  }
+
+  public int userCount() {
+    return users.size();
+  }
+
+  public int voteCount() {
+    return votes.size();
+  }
+
+  /**
+   * @return the number of writes waiting to be persisted
+   */
+  public int pendingWrites() {
+    return log == null ? 0 : log.pendingCount();
+  }
+
+  public void insertUser(User user, Handler<AsyncResult<Void>> handler) {
+    write(Collections.singletonList(insert("users", userDoc(user))), handler);
+  }
+
+  /**
+   * Replaces the password of a user, unless it is not {@code expected} anymore.
+   */
+  public void updatePassword(String id, String expected, String password, Handler<AsyncResult<Void>> handler) {
+    synchronized (this) {
+      User user = users.get(id);
+      if (user != null && expected.equals(user.getPassword())) {
+        // Inserting a user again replaces it
+        write(Collections.singletonList(insert("users", userDoc(new User(id, user.getName(), user.getEmail(), password)))), handler);
+        return;
+      }
+    }
+    handler.handle(Future.succeededFuture());
+  }
+
+  public void insertLinks(List<Link> links, Handler<AsyncResult<Void>> handler) {
+    List<JsonObject> entries = new ArrayList<>(links.size());
+    links.forEach(link -> entries.add(insert("links", linkDoc(link))));
+    write(entries, handler);
+  }
+
+  public void insertVotes(List<Vote> votes, Handler<AsyncResult<Void>> handler) {
+    List<JsonObject> entries = new ArrayList<>(votes.size());
+    votes.forEach(vote -> entries.add(insert("votes", voteDoc(vote))));
+    write(entries, handler);
+  }
+
+  /**
+   * Increments the vote counters of existing links; unknown ids and links without a counter are ignored.
+   */
+  public void incrementVoteCounts(Map<String, Long> increments, Handler<AsyncResult<Void>> handler) {
+    List<JsonObject> entries = new ArrayList<>(increments.size());
+    increments.forEach((id, increment) -> entries.add(new JsonObject().put("inc", "links").put("_id", id).put("voteCount", increment)));
+    write(entries, handler);
+  }
+
+  private void write(List<JsonObject> entries, Handler<AsyncResult<Void>> handler) {
+    synchronized (this) {
+      entries.forEach(this::apply);
+      if (log != null) {
+        log.append(entries, handler);
+        return;
+      }
+    }
+    handler.handle(Future.succeededFuture());
+  }
+
+  private void apply(JsonObject entry) {
+    String collection = entry.getString("insert");
+    if (collection == null) {
+      links.computeIfPresent(entry.getString("_id"), (id, link) -> link.getVoteCount() == null ? link
+        : new Link(id, link.getUrl(), link.getDescription(), link.getUserId(), link.getVoteCount() + entry.getInteger("voteCount")));
+      return;
+    }
+    JsonObject doc = entry.getJsonObject("doc");
+    String id = doc.getString("_id");
+    switch (collection) {
+      case "users":
+        users.put(id, new User(id, doc.getString("name"), doc.getString("email"), doc.getString("password")));
+        // Like findOne on the email index, the oldest user wins
+        userIdsByEmail.putIfAbsent(doc.getString("email"), id);
+        break;
+      case "links":
+        links.put(id, new Link(id, doc.getString("url"), doc.getString("description"), doc.getString("postedBy"), doc.getInteger("voteCount")));
+        index(linkIdsByUser, doc.getString("postedBy"), id);
+        break;
+      case "votes":
+        votes.put(id, new Vote(id, ZonedDateTime.parse(doc.getString("createdAt")), doc.getString("userId"), doc.getString("linkId")));
+        index(voteIdsByLink, doc.getString("linkId"), id);
+        index(voteIdsByUser, doc.getString("userId"), id);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown collection: " + collection);
+    }
+  }
+
+  private static void index(ConcurrentMap<String, Set<String>> index, String key, String id) {
+    if (key != null) {
+      index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+  }
+
+  private static <T> List<T> lookup(ConcurrentMap<String, Set<String>> index, String key, Map<String, T> values) {
+    Set<String> ids = key == null ? null : index.get(key);
+    if (ids == null) {
+      return Collections.emptyList();
+    }
+    List<T> result = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      T value = values.get(id);
+      if (value != null) {
+        result.add(value);
+      }
+    }
+    return result;
+  }
+
+  private static JsonObject insert(String collection, JsonObject doc) {
+    return new JsonObject().put("insert", collection).put("doc", doc);
+  }
+
+  private static JsonObject userDoc(User user) {
+    return new JsonObject()
+      .put("_id", user.getId())
+      .put("name", user.getName())
+      .put("email", user.getEmail())
+      .put("password", user.getPassword());
+  }
+
+  private static JsonObject linkDoc(Link link) {
+    return new JsonObject()
+      .put("_id", link.getId())
+      .put("url", link.getUrl())
+      .put("description", link.getDescription())
+      .put("postedBy", link.getUserId())
+      .put("voteCount", link.getVoteCount());
+  }
+
+  private static JsonObject voteDoc(Vote vote) {
+    return new JsonObject()
+      .put("_id", vote.getId())
+      .put("userId", vote.getUserId())
+      .put("linkId", vote.getLinkId())
+      .put("createdAt", Scalars.dateTime.getCoercing().serialize(vote.getCreatedAt()));
+  }
+}
@@ -0,0 +1,61 @@
+package com.howtographql;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Users of a {@link MemoryStore}; no {@link UserCache} in front, the store is as fast.
+ */
+public class MemoryUserRepository implements UserRepository {
+
+  private final MemoryStore store;
+
+  public MemoryUserRepository(MemoryStore store) {
+    this.store = store;
+  }
+
+  @Override
+  public void createIndexes(Handler<AsyncResult<Void>> handler) {
+    handler.handle(Future.succeededFuture());
+  }
+
+  @Override
+  public void findByEmail(String email, Handler<AsyncResult<User>> handler) {
+    handler.handle(Future.succeededFuture(store.userByEmail(email)));
+  }
+
+  @Override
+  public void findById(String id, Handler<AsyncResult<User>> handler) {
+    handler.handle(Future.succeededFuture(store.user(id)));
+  }
+
+  @Override
+  public void findByIds(List<String> ids, Projection projection, Handler<AsyncResult<List<User>>> handler) {
+    List<User> users = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      User user = store.user(id);
+      if (user != null) {
+        users.add(user);
+      }
+    }
+    handler.handle(Future.succeededFuture(users));
+  }
+
+  @Override
+  public void saveUser(User user, Handler<AsyncResult<User>> handler) {
+    User saved = new User(new ObjectId().toHexString(), user.getName(), user.getEmail(), user.getPassword());
+    Future<Void> future = Future.future();
+    store.insertUser(saved, future);
+    future.map(v -> saved).setHandler(handler);
+  }
+
+  @Override
+  public void updatePassword(String id, String expected, String password, Handler<AsyncResult<Void>> handler) {
+    store.updatePassword(id, expected, password, handler);
+  }
+}
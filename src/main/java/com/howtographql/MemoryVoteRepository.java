@@ -0,0 +1,105 @@
+package com.howtographql;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import org.bson.types.ObjectId;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Votes of a {@link MemoryStore}, looked up through its link and user indexes.
+ */
+public class MemoryVoteRepository implements VoteRepository {
+
+  private final MemoryStore store;
+  private final LinkRepository linkRepository;
+
+  public MemoryVoteRepository(MemoryStore store, LinkRepository linkRepository) {
+    this.store = store;
+    this.linkRepository = linkRepository;
+  }
+
+  @Override
+  public void createIndexes(Handler<AsyncResult<Void>> handler) {
+    handler.handle(Future.succeededFuture());
+  }
+
+  /**
+   * Done by the store when it is loaded.
+   */
+  @Override
+  public void backfillVoteCounts(Handler<AsyncResult<Void>> handler) {
+    handler.handle(Future.succeededFuture());
+  }
+
+  @Override
+  public void findByUserId(String userId, Handler<AsyncResult<List<Vote>>> handler) {
+    handler.handle(Future.succeededFuture(store.votesByUser(userId)));
+  }
+
+  @Override
+  public void findByLinkId(String linkId, Handler<AsyncResult<List<Vote>>> handler) {
+    handler.handle(Future.succeededFuture(store.votesByLink(linkId)));
+  }
+
+  @Override
+  public void findByLinkIds(List<String> linkIds, String afterId, int first, Handler<AsyncResult<Map<String, List<Vote>>>> handler) {
+    Map<String, List<Vote>> votes = new HashMap<>();
+    for (String linkId : linkIds) {
+      List<Vote> list = store.votesByLink(linkId).stream()
+        .filter(vote -> afterId == null || vote.getId().compareTo(afterId) > 0)
+        .sorted(comparing(Vote::getId))
+        .limit(first)
+        .collect(toList());
+      if (!list.isEmpty()) {
+        votes.put(linkId, list);
+      }
+    }
+    handler.handle(Future.succeededFuture(votes));
+  }
+
+  @Override
+  public void countByLinkIds(List<String> linkIds, Handler<AsyncResult<Map<String, Integer>>> handler) {
+    Map<String, Integer> counts = new HashMap<>();
+    for (String linkId : linkIds) {
+      int count = store.votesByLink(linkId).size();
+      if (count > 0) {
+        counts.put(linkId, count);
+      }
+    }
+    handler.handle(Future.succeededFuture(counts));
+  }
+
+  @Override
+  public void saveVote(Vote vote, Handler<AsyncResult<Vote>> handler) {
+    Future<List<Vote>> future = Future.future();
+    saveVotes(Collections.singletonList(vote), future);
+    future.map(list -> list.get(0)).setHandler(handler);
+  }
+
+  @Override
+  public void saveVotes(List<Vote> votes, Handler<AsyncResult<List<Vote>>> handler) {
+    List<Vote> saved = votes.stream()
+      .map(vote -> new Vote(new ObjectId().toHexString(), vote.getCreatedAt(), vote.getUserId(), vote.getLinkId()))
+      .collect(toList());
+    Future<Void> future = Future.future();
+    store.insertVotes(saved, future);
+    future.compose(v -> {
+      Map<String, Long> increments = saved.stream()
+        .filter(vote -> vote.getLinkId() != null)
+        .collect(groupingBy(Vote::getLinkId, counting()));
+      Future<Void> counters = Future.future();
+      linkRepository.incrementVoteCounts(increments, counters);
+      return counters;
+    }).map(v -> saved).setHandler(handler);
+  }
+}
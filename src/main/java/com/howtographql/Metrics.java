@@ -0,0 +1,134 @@
+package com.howtographql;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Minimal metrics registry rendered in the Prometheus text exposition format.
+ * <p>
+ * Metric values are keyed by name, then by their (preformatted) label set, e.g. {@code field="Link.postedBy"}.
+ */
+public class Metrics {
+
+  public static final double[] LATENCY_BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+  public static final double[] SIZE_BUCKETS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000};
+
+  private final ConcurrentMap<String, Family<Histogram>> histograms = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Family<LongAdder>> counters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Family<Supplier<Number>>> gauges = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Family<Supplier<Number>>> counterFunctions = new ConcurrentHashMap<>();
+
+  public void observe(String name, String help, double[] buckets, String labels, double value) {
+    histograms.computeIfAbsent(name, n -> new Family<>(help))
+      .values.computeIfAbsent(labels, l -> new Histogram(buckets))
+      .observe(value);
+  }
+
+  public void increment(String name, String help, String labels, long amount) {
+    counters.computeIfAbsent(name, n -> new Family<>(help))
+      .values.computeIfAbsent(labels, l -> new LongAdder())
+      .add(amount);
+  }
+
+  public void gauge(String name, String help, String labels, Supplier<Number> supplier) {
+    gauges.computeIfAbsent(name, n -> new Family<>(help)).values.put(labels, supplier);
+  }
+
+  /**
+   * Registers a counter kept by another component: {@code supplier} must never decrease.
+   */
+  public void counter(String name, String help, String labels, Supplier<Number> supplier) {
+    counterFunctions.computeIfAbsent(name, n -> new Family<>(help)).values.put(labels, supplier);
+  }
+
+  public static String label(String name, String value) {
+    return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+  }
+
+  public String scrape() {
+    StringBuilder sb = new StringBuilder();
+    counters.forEach((name, family) -> {
+      header(sb, name, family.help, "counter");
+      family.values.forEach((labels, value) -> sample(sb, name, labels, value.sum()));
+    });
+    counterFunctions.forEach((name, family) -> {
+      header(sb, name, family.help, "counter");
+      family.values.forEach((labels, value) -> sample(sb, name, labels, value.get().doubleValue()));
+    });
+    gauges.forEach((name, family) -> {
+      header(sb, name, family.help, "gauge");
+      family.values.forEach((labels, value) -> sample(sb, name, labels, value.get().doubleValue()));
+    });
+    histograms.forEach((name, family) -> {
+      header(sb, name, family.help, "histogram");
+      family.values.forEach((labels, histogram) -> histogram.render(sb, name, labels));
+    });
+    return sb.toString();
+  }
+
+  private static void header(StringBuilder sb, String name, String help, String type) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder sb, String name, String labels, double value) {
+    sb.append(name);
+    if (!labels.isEmpty()) {
+      sb.append('{').append(labels).append('}');
+    }
+    sb.append(' ').append(value).append('\n');
+  }
+
+  private static class Family<T> {
+
+    final String help;
+    final Map<String, T> values = new ConcurrentHashMap<>();
+
+    Family(String help) {
+      this.help = help;
+    }
+  }
+
+  private static class Histogram {
+
+    final double[] buckets;
+    final LongAdder[] counts;
+    final LongAdder count = new LongAdder();
+    final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(double[] buckets) {
+      this.buckets = buckets;
+      this.counts = new LongAdder[buckets.length];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = new LongAdder();
+      }
+    }
+
+    void observe(double value) {
+      for (int i = 0; i < buckets.length; i++) {
+        if (value <= buckets[i]) {
+          counts[i].increment();
+          break;
+        }
+      }
+      count.increment();
+      sum.add(value);
+    }
+
+    void render(StringBuilder sb, String name, String labels) {
+      String prefix = labels.isEmpty() ? "" : labels + ",";
+      long cumulative = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        cumulative += counts[i].sum();
+        sample(sb, name + "_bucket", prefix + "le=\"" + buckets[i] + "\"", cumulative);
+      }
+      sample(sb, name + "_bucket", prefix + "le=\"+Inf\"", count.sum());
+      sample(sb, name + "_count", labels, count.sum());
+      sample(sb, name + "_sum", labels, sum.sum());
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package com.howtographql;
+
+import graphql.ExecutionResult;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentation;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.language.OperationDefinition;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.PropertyDataFetcher;
+import org.dataloader.DataLoaderRegistry;
+import org.dataloader.stats.Statistics;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records operation and resolver latencies, as well as per-request DataLoader statistics and MongoDB calls.
+ * <p>
+ * Only fields with a custom data fetcher are timed: property fetches and introspection are not worth the overhead.
+ * Operation names are chosen by clients, so only those of persisted queries are used as labels, up to
+ * {@code maxOperationNames} distinct names; other named operations are labelled {@code other}.
+ */
+public class MetricsInstrumentation extends SimpleInstrumentation {
+
+  private final Metrics metrics;
+  private final int maxOperationNames;
+  private final Set<String> operationNames = ConcurrentHashMap.newKeySet();
+
+  public MetricsInstrumentation(Metrics metrics, int maxOperationNames) {
+    this.metrics = metrics;
+    this.maxOperationNames = maxOperationNames;
+  }
+
+  @Override
+  public InstrumentationState createState() {
+    return new OperationState();
+  }
+
+  @Override
+  public InstrumentationContext<ExecutionResult> beginExecution(InstrumentationExecutionParameters parameters) {
+    OperationState state = parameters.getInstrumentationState();
+    Object context = parameters.getExecutionInput().getContext();
+    long start = System.nanoTime();
+    return SimpleInstrumentationContext.whenCompleted((result, throwable) -> {
+      String labels = Metrics.label("operation", state.operation);
+      metrics.observe("graphql_operation_seconds", "GraphQL operation latency", Metrics.LATENCY_BUCKETS,
+        labels, (System.nanoTime() - start) / 1e9);
+      if (context instanceof OperationContext) {
+        metrics.observe("graphql_operation_mongo_calls", "MongoDB operations issued per GraphQL operation", Metrics.SIZE_BUCKETS,
+          labels, ((OperationContext) context).getMongoCalls());
+      }
+    });
+  }
+
+  @Override
+  public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters) {
+    OperationState state = parameters.getInstrumentationState();
+    OperationDefinition operation = parameters.getExecutionContext().getOperationDefinition();
+    String type = operation.getOperation().name().toLowerCase();
+    Object context = parameters.getExecutionContext().getContext();
+    boolean persisted = context instanceof OperationContext && ((OperationContext) context).isPersistedQuery();
+    if (operation.getName() == null) {
+      state.operation = type;
+    } else {
+      state.operation = type + " " + (persisted && allowOperationName(operation.getName()) ? operation.getName() : "other");
+    }
+    return super.beginExecuteOperation(parameters);
+  }
+
+  private boolean allowOperationName(String name) {
+    if (operationNames.contains(name)) {
+      return true;
+    }
+    synchronized (operationNames) {
+      return operationNames.size() < maxOperationNames && operationNames.add(name);
+    }
+  }
+
+  @Override
+  public InstrumentationContext<Object> beginFieldFetch(InstrumentationFieldFetchParameters parameters) {
+    GraphQLFieldDefinition fieldDefinition = parameters.getField();
+    if (fieldDefinition.getDataFetcher() instanceof PropertyDataFetcher || fieldDefinition.getName().startsWith("__")) {
+      return super.beginFieldFetch(parameters);
+    }
+    DataFetchingEnvironment env = parameters.getEnvironment();
+    String field = env.getParentType().getName() + "." + fieldDefinition.getName();
+    long start = System.nanoTime();
+    return SimpleInstrumentationContext.whenCompleted((result, throwable) -> {
+      metrics.observe("graphql_field_seconds", "GraphQL data fetcher latency", Metrics.LATENCY_BUCKETS,
+        Metrics.label("field", field), (System.nanoTime() - start) / 1e9);
+    });
+  }
+
+  @Override
+  public CompletableFuture<ExecutionResult> instrumentExecutionResult(ExecutionResult executionResult, InstrumentationExecutionParameters parameters) {
+    DataLoaderRegistry registry = parameters.getExecutionInput().getDataLoaderRegistry();
+    // Shared registries are recorded once, when all their executions are done
+    if (registry != null && !(registry instanceof CoalescingDataLoaderRegistry)) {
+      recordStatistics(registry);
+    }
+    return super.instrumentExecutionResult(executionResult, parameters);
+  }
+
+  /**
+   * Records the statistics of the DataLoaders used by a request.
+   */
+  public void recordStatistics(DataLoaderRegistry registry) {
+    for (String key : registry.getKeys()) {
+      Statistics statistics = registry.getDataLoader(key).getStatistics();
+      String labels = Metrics.label("loader", key);
+      metrics.increment("dataloader_loads_total", "DataLoader load calls", labels, statistics.getLoadCount());
+      metrics.increment("dataloader_cache_hits_total", "DataLoader load calls served from the request cache", labels, statistics.getCacheHitCount());
+      metrics.increment("dataloader_batches_total", "DataLoader batch function invocations", labels, statistics.getBatchInvokeCount());
+      if (statistics.getBatchInvokeCount() > 0) {
+        metrics.observe("dataloader_batch_size", "Average DataLoader batch size per request", Metrics.SIZE_BUCKETS,
+          labels, (double) statistics.getBatchLoadCount() / statistics.getBatchInvokeCount());
+      }
+    }
+  }
+
+  private static class OperationState implements InstrumentationState {
+    String operation = "unknown";
+  }
+}
@@ -0,0 +1,221 @@
+package com.howtographql;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.mongo.FindOptions;
+import io.vertx.ext.mongo.IndexOptions;
+import io.vertx.ext.mongo.MongoClient;
+import org.bson.types.ObjectId;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Links stored in the {@code links} collection.
+ */
+public class MongoLinkRepository implements LinkRepository {
+
+  private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+  private final MongoClient mongoClient;
+  private final SearchStrategy searchStrategy;
+  private final BulkWriter bulkWriter;
+
+  public MongoLinkRepository(MongoClient mongoClient, SearchStrategy searchStrategy, BulkWriter bulkWriter) {
+    this.mongoClient = mongoClient;
+    this.searchStrategy = searchStrategy;
+    this.bulkWriter = bulkWriter;
+  }
+
+  /**
+   * A read-only repository: writes fail.
+   */
+  public MongoLinkRepository(MongoClient mongoClient, SearchStrategy searchStrategy) {
+    this(mongoClient, searchStrategy, null);
+  }
+
+  @Override
+  public void createIndexes(Handler<AsyncResult<Void>> handler) {
+    if (searchStrategy != SearchStrategy.TEXT) {
+      handler.handle(Future.succeededFuture());
+      return;
+    }
+    JsonObject keys = new JsonObject().put("description", "text").put("url", "text");
+    mongoClient.createIndexWithOptions("links", keys, new IndexOptions().name("links_search"), handler);
+  }
+
+  @Override
+  public SearchStrategy searchStrategy(LinkFilter filter) {
+    if (filter == null || (isEmpty(filter.getDescriptionContains()) && isEmpty(filter.getUrlContains()))) {
+      return null;
+    }
+    return searchStrategy;
+  }
+
+  @Override
+  public void findById(String id, Handler<AsyncResult<Link>> handler) {
+    JsonObject query = new JsonObject().put("_id", id);
+    Future<JsonObject> future = Future.future();
+    mongoClient.findOne("links", query, null, future);
+    future.map(json -> link(json)).setHandler(handler);
+  }
+
+  @Override
+  public void findByIds(List<String> ids, Handler<AsyncResult<List<Link>>> handler) {
+    JsonObject query = new JsonObject()
+      .put("_id", new JsonObject().put("$in", new JsonArray(ids)));
+    Future<List<JsonObject>> future = Future.future();
+    mongoClient.find("links", query, future);
+    future.map(list -> list.stream().map(this::link).collect(toList())).setHandler(handler);
+  }
+
+  @Override
+  public void findByUserId(String userId, Handler<AsyncResult<List<Link>>> handler) {
+    Future<List<JsonObject>> future = Future.future();
+    mongoClient.find("links", new JsonObject().put("postedBy", userId), future);
+    future.map(list -> list.stream().map(this::link).collect(toList())).setHandler(handler);
+  }
+
+  @Override
+  public void getAllLinks(LinkFilter filter, int skip, int first, Projection projection, Handler<AsyncResult<List<Link>>> handler) {
+    FindOptions options = new FindOptions().setFields(projection.toMongoFields()).setSkip(skip).setLimit(first);
+    Future<List<JsonObject>> future = Future.future();
+    mongoClient.findWithOptions("links", buildFilter(filter), options, future);
+    future.map(list -> list.stream().map(this::link).collect(toList())).setHandler(handler);
+  }
+
+  /**
+   * Keyset pagination: links are ordered by {@code _id} (ObjectId hex strings sort by creation time) and the page
+   * starts right after {@code afterId}, so deep pages use the {@code _id} index instead of skipping documents.
+   */
+  @Override
+  public void getLinksAfter(LinkFilter filter, String afterId, int first, Handler<AsyncResult<List<Link>>> handler) {
+    JsonObject query = buildFilter(filter);
+    if (afterId != null) {
+      query.put("_id", new JsonObject().put("$gt", afterId));
+    }
+    FindOptions options = new FindOptions().setSort(new JsonObject().put("_id", 1)).setLimit(first);
+    Future<List<JsonObject>> future = Future.future();
+    mongoClient.findWithOptions("links", query, options, future);
+    future.map(list -> list.stream().map(this::link).collect(toList())).setHandler(handler);
+  }
+
+  /**
+   * Generated ids are ObjectId hex strings starting with the creation time in seconds, so this is a range query on
+   * the {@code _id} index.
+   */
+  @Override
+  public void findCreatedSince(Instant instant, Handler<AsyncResult<List<Link>>> handler) {
+    JsonObject query = new JsonObject().put("_id", new JsonObject().put("$gte", LinkRepository.minId(instant)));
+    Future<List<JsonObject>> future = Future.future();
+    mongoClient.find("links", query, future);
+    future.map(list -> list.stream().map(this::link).collect(toList())).setHandler(handler);
+  }
+
+  private JsonObject buildFilter(LinkFilter filter) {
+    JsonObject query = new JsonObject();
+    if (filter == null) {
+      return query;
+    }
+    String descriptionPattern = filter.getDescriptionContains();
+    String urlPattern = filter.getUrlContains();
+    StringBuilder phrases = new StringBuilder();
+    if (!isEmpty(descriptionPattern)) {
+      query.put("description", new JsonObject().put("$regex", escapeRegex(descriptionPattern)));
+      phrases.append(phrase(descriptionPattern));
+    }
+    if (!isEmpty(urlPattern)) {
+      query.put("url", new JsonObject().put("$regex", escapeRegex(urlPattern)));
+      phrases.append(phrase(urlPattern));
+    }
+    if (searchStrategy == SearchStrategy.TEXT && phrases.length() > 0) {
+      // Quoted phrases are ANDed, the regular expressions then check each phrase is in the right field
+      query.put("$text", new JsonObject().put("$search", phrases.toString()));
+    }
+    return query;
+  }
+
+  private static String phrase(String pattern) {
+    return "\"" + pattern.replace("\"", " ") + "\" ";
+  }
+
+  private static String escapeRegex(String pattern) {
+    StringBuilder sb = new StringBuilder(pattern.length() + 8);
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if (REGEX_METACHARACTERS.indexOf(c) >= 0) {
+        sb.append('\\');
+      }
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  private static boolean isEmpty(String s) {
+    return s == null || s.isEmpty();
+  }
+
+  @Override
+  public void saveLink(Link link, Handler<AsyncResult<Link>> handler) {
+    Future<List<Link>> future = Future.future();
+    saveLinks(Collections.singletonList(link), future);
+    future.map(list -> list.get(0)).setHandler(handler);
+  }
+
+  /**
+   * Ids are generated here so that inserts can be coalesced into bulk writes, which do not report them.
+   */
+  @Override
+  public void saveLinks(List<Link> links, Handler<AsyncResult<List<Link>>> handler) {
+    List<JsonObject> docs = links.stream()
+      .map(link -> new JsonObject()
+        .put("_id", new ObjectId().toHexString())
+        .put("url", link.getUrl())
+        .put("description", link.getDescription())
+        .put("postedBy", link.getUserId())
+        .put("voteCount", 0))
+      .collect(toList());
+    Future<Void> future = Future.future();
+    write(docs.stream().map(BulkOperation::createInsert).collect(toList()), future);
+    future.map(v -> docs.stream().map(this::link).collect(toList())).setHandler(handler);
+  }
+
+  /**
+   * Links without a counter are left alone: they were created before it existed and their votes are counted until
+   * {@link VoteRepository#backfillVoteCounts} sets it, from all their votes.
+   */
+  @Override
+  public void incrementVoteCounts(Map<String, Long> increments, Handler<AsyncResult<Void>> handler) {
+    List<BulkOperation> updates = increments.entrySet().stream()
+      .map(entry -> BulkOperation.createUpdate(
+        new JsonObject().put("_id", entry.getKey()).put("voteCount", new JsonObject().put("$exists", true)),
+        new JsonObject().put("$inc", new JsonObject().put("voteCount", entry.getValue()))))
+      .collect(toList());
+    write(updates, handler);
+  }
+
+  private void write(List<BulkOperation> operations, Handler<AsyncResult<Void>> handler) {
+    if (bulkWriter == null) {
+      handler.handle(Future.failedFuture(new IllegalStateException("Read-only link repository")));
+      return;
+    }
+    bulkWriter.write(operations, handler);
+  }
+
+  Link link(JsonObject doc) {
+    return new Link(
+      doc.getString("_id"),
+      doc.getString("url"),
+      doc.getString("description"),
+      doc.getString("postedBy"),
+      doc.getInteger("voteCount"));
+  }
+}
@@ -0,0 +1,53 @@
+package com.howtographql;
+
+import io.vertx.core.Handler;
+import io.vertx.ext.mongo.MongoClient;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decorates a {@link MongoClient} to count the asynchronous operations issued, by method name, and those pending.
+ * <p>
+ * Operations are also counted by the {@link OperationContext} they are issued for. Their result handlers run on
+ * behalf of the same operation, so that the calls chained after them are counted as well.
+ */
+public class MongoMetrics {
+
+  @SuppressWarnings("unchecked")
+  public static MongoClient wrap(MongoClient delegate, Metrics metrics, AtomicInteger pending) {
+    return (MongoClient) Proxy.newProxyInstance(MongoClient.class.getClassLoader(), new Class<?>[]{MongoClient.class}, (proxy, method, args) -> {
+      Class<?>[] types = method.getParameterTypes();
+      boolean tracked = false;
+      if (types.length > 0 && types[types.length - 1] == Handler.class) {
+        metrics.increment("mongo_calls_total", "MongoDB operations issued", Metrics.label("operation", method.getName()), 1);
+        OperationContext context = OperationContext.current();
+        if (context != null) {
+          context.incrementMongoCalls();
+        }
+        Handler<Object> handler = (Handler<Object>) args[args.length - 1];
+        if (handler != null) {
+          Handler<Object> bound = OperationContext.bind(handler);
+          tracked = true;
+          pending.incrementAndGet();
+          args[args.length - 1] = (Handler<Object>) result -> {
+            pending.decrementAndGet();
+            bound.handle(result);
+          };
+        }
+      }
+      Object result;
+      try {
+        result = method.invoke(delegate, args);
+      } catch (InvocationTargetException e) {
+        if (tracked) {
+          pending.decrementAndGet();
+        }
+        throw e.getCause();
+      }
+      // Keep the fluent API on the decorated instance
+      return result == delegate ? proxy : result;
+    });
+  }
+}
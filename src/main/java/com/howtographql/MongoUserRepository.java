@@ -0,0 +1,125 @@
+package com.howtographql;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mongo.FindOptions;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.ext.mongo.MongoClientUpdateResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Users stored in the {@code users} collection, read through the shared {@link UserCache}.
+ */
+public class MongoUserRepository implements UserRepository {
+
+  private final MongoClient mongoClient;
+  private final UserCache userCache;
+
+  public MongoUserRepository(MongoClient mongoClient, UserCache userCache) {
+    this.mongoClient = mongoClient;
+    this.userCache = userCache;
+  }
+
+  @Override
+  public void createIndexes(Handler<AsyncResult<Void>> handler) {
+    mongoClient.createIndex("users", new JsonObject().put("email", 1), handler);
+  }
+
+  @Override
+  public void findByEmail(String email, Handler<AsyncResult<User>> handler) {
+    JsonObject query = new JsonObject().put("email", email);
+    Future<JsonObject> future = Future.future();
+    mongoClient.findOne("users", query, null, future);
+    future.map(json -> user(json)).setHandler(handler);
+  }
+
+  @Override
+  public void findById(String id, Handler<AsyncResult<User>> handler) {
+    User cached = userCache.get(id);
+    if (cached != null) {
+      handler.handle(Future.succeededFuture(cached));
+      return;
+    }
+    JsonObject query = new JsonObject().put("_id", id);
+    Future<JsonObject> future = Future.future();
+    mongoClient.findOne("users", query, null, future);
+    future.map(json -> cache(user(json))).setHandler(handler);
+  }
+
+  @Override
+  public void saveUser(User user, Handler<AsyncResult<User>> handler) {
+    JsonObject doc = new JsonObject()
+      .put("name", user.getName())
+      .put("email", user.getEmail())
+      .put("password", user.getPassword());
+    Future<String> future = Future.future();
+    mongoClient.insert("users", doc, future);
+    future.map(id -> {
+      userCache.invalidate(id);
+      return user(doc.put("_id", id));
+    }).setHandler(handler);
+  }
+
+  @Override
+  public void updatePassword(String id, String expected, String password, Handler<AsyncResult<Void>> handler) {
+    JsonObject query = new JsonObject().put("_id", id).put("password", expected);
+    Future<MongoClientUpdateResult> future = Future.future();
+    mongoClient.updateCollection("users", query, new JsonObject().put("$set", new JsonObject().put("password", password)), future);
+    future.<Void>map(result -> {
+      userCache.invalidate(id);
+      return null;
+    }).setHandler(handler);
+  }
+
+  private User user(JsonObject doc) {
+    if (doc == null) {
+      return null;
+    }
+    return new User(
+      doc.getString("_id"),
+      doc.getString("name"),
+      doc.getString("email"),
+      doc.getString("password"));
+  }
+
+  private User cache(User user) {
+    userCache.put(user);
+    return user;
+  }
+
+  @Override
+  public void findByIds(List<String> keys, Projection projection, Handler<AsyncResult<List<User>>> handler) {
+    List<User> users = new ArrayList<>(keys.size());
+    List<String> missing = new ArrayList<>();
+    for (String key : keys) {
+      User cached = userCache.get(key, projection);
+      if (cached != null) {
+        users.add(cached);
+      } else {
+        missing.add(key);
+      }
+    }
+    if (missing.isEmpty()) {
+      handler.handle(Future.succeededFuture(users));
+      return;
+    }
+    JsonObject query = new JsonObject()
+      .put("_id", new JsonObject().put("$in", new JsonArray(missing)));
+    FindOptions options = new FindOptions().setFields(projection.toMongoFields());
+    Future<List<JsonObject>> future = Future.future();
+    mongoClient.findWithOptions("users", query, options, future);
+    future.map(docs -> {
+      for (JsonObject doc : docs) {
+        User user = user(doc);
+        userCache.put(user, projection);
+        users.add(user);
+      }
+      return users;
+    }).setHandler(handler);
+  }
+}
@@ -0,0 +1,209 @@
+package com.howtographql;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.mongo.BulkOperation;
+import io.vertx.ext.mongo.BulkWriteOptions;
+import io.vertx.ext.mongo.FindOptions;
+import io.vertx.ext.mongo.MongoClient;
+import io.vertx.ext.mongo.MongoClientBulkWriteResult;
+import io.vertx.ext.mongo.UpdateOptions;
+import org.bson.types.ObjectId;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Votes stored in the {@code votes} collection; the vote counters live on the link documents.
+ */
+public class MongoVoteRepository implements VoteRepository {
+
+  private static final int BACKFILL_BATCH_SIZE = 1000;
+
+  private final MongoClient mongoClient;
+  private final LinkRepository linkRepository;
+  private final BulkWriter bulkWriter;
+
+  public MongoVoteRepository(MongoClient mongoClient, LinkRepository linkRepository, BulkWriter bulkWriter) {
+    this.mongoClient = mongoClient;
+    this.linkRepository = linkRepository;
+    this.bulkWriter = bulkWriter;
+  }
+
+  @Override
+  public void createIndexes(Handler<AsyncResult<Void>> handler) {
+    Future<Void> linkIndex = Future.future();
+    mongoClient.createIndex("votes", new JsonObject().put("linkId", 1).put("_id", 1), linkIndex);
+    Future<Void> userIndex = Future.future();
+    mongoClient.createIndex("votes", new JsonObject().put("userId", 1), userIndex);
+    CompositeFuture.all(linkIndex, userIndex).<Void>mapEmpty().setHandler(handler);
+  }
+
+  @Override
+  public void findByUserId(String userId, Handler<AsyncResult<List<Vote>>> handler) {
+    Future<List<JsonObject>> future = Future.future();
+    mongoClient.find("votes", new JsonObject().put("userId", userId), future);
+    future.map(list -> list.stream().map(this::vote).collect(toList())).setHandler(handler);
+  }
+
+  @Override
+  public void findByLinkId(String linkId, Handler<AsyncResult<List<Vote>>> handler) {
+    Future<List<JsonObject>> future = Future.future();
+    mongoClient.find("votes", new JsonObject().put("linkId", linkId), future);
+    future.map(list -> list.stream().map(this::vote).collect(toList())).setHandler(handler);
+  }
+
+  /**
+   * A single aggregation: the (linkId, _id) index serves the match and the sort, then each link keeps its page.
+   */
+  @Override
+  public void findByLinkIds(List<String> linkIds, String afterId, int first, Handler<AsyncResult<Map<String, List<Vote>>>> handler) {
+    JsonObject match = new JsonObject().put("linkId", new JsonObject().put("$in", new JsonArray(linkIds)));
+    if (afterId != null) {
+      match.put("_id", new JsonObject().put("$gt", afterId));
+    }
+    JsonArray pipeline = new JsonArray()
+      .add(new JsonObject().put("$match", match))
+      .add(new JsonObject().put("$sort", new JsonObject().put("linkId", 1).put("_id", 1)))
+      .add(new JsonObject().put("$group", new JsonObject().put("_id", "$linkId").put("votes", new JsonObject().put("$push", "$$ROOT"))))
+      .add(new JsonObject().put("$project", new JsonObject().put("votes", new JsonObject().put("$slice", new JsonArray().add("$votes").add(first)))));
+    Map<String, List<Vote>> votes = new HashMap<>();
+    ReadStream<JsonObject> stream = mongoClient.aggregate("votes", pipeline);
+    stream.exceptionHandler(t -> handler.handle(Future.failedFuture(t)))
+      .endHandler(v -> handler.handle(Future.succeededFuture(votes)))
+      .handler(doc -> votes.put(doc.getString("_id"), doc.getJsonArray("votes").stream()
+        .map(vote -> vote((JsonObject) vote))
+        .collect(toList())));
+  }
+
+  /**
+   * Counts the votes of several links with a single {@code $group} aggregation.
+   */
+  @Override
+  public void countByLinkIds(List<String> linkIds, Handler<AsyncResult<Map<String, Integer>>> handler) {
+    JsonArray pipeline = new JsonArray()
+      .add(new JsonObject().put("$match", new JsonObject().put("linkId", new JsonObject().put("$in", new JsonArray(linkIds)))))
+      .add(new JsonObject().put("$group", new JsonObject().put("_id", "$linkId").put("count", new JsonObject().put("$sum", 1))));
+    Map<String, Integer> counts = new HashMap<>();
+    ReadStream<JsonObject> stream = mongoClient.aggregate("votes", pipeline);
+    stream.exceptionHandler(t -> handler.handle(Future.failedFuture(t)))
+      .endHandler(v -> handler.handle(Future.succeededFuture(counts)))
+      .handler(doc -> counts.put(doc.getString("_id"), doc.getInteger("count")));
+  }
+
+  @Override
+  public void saveVote(Vote vote, Handler<AsyncResult<Vote>> handler) {
+    Future<List<Vote>> future = Future.future();
+    saveVotes(Collections.singletonList(vote), future);
+    future.map(list -> list.get(0)).setHandler(handler);
+  }
+
+  /**
+   * The votes are inserted before the counters are incremented. When the counters may not match the votes anymore,
+   * because either step failed, they are dropped: the votes of these links are counted instead until the next
+   * {@link #backfillVoteCounts}.
+   */
+  @Override
+  public void saveVotes(List<Vote> votes, Handler<AsyncResult<List<Vote>>> handler) {
+    List<JsonObject> docs = votes.stream()
+      .map(vote -> new JsonObject()
+        .put("_id", new ObjectId().toHexString())
+        .put("userId", vote.getUserId())
+        .put("linkId", vote.getLinkId())
+        .put("createdAt", Scalars.dateTime.getCoercing().serialize(vote.getCreatedAt())))
+      .collect(toList());
+    Map<String, Long> increments = votes.stream()
+      .filter(vote -> vote.getLinkId() != null)
+      .collect(groupingBy(Vote::getLinkId, counting()));
+    Future<Void> inserted = Future.future();
+    bulkWriter.write(docs.stream().map(BulkOperation::createInsert).collect(toList()), inserted);
+    inserted.setHandler(ar -> {
+      if (ar.failed()) {
+        // Votes of a failed submission may still have been inserted
+        dropVoteCounts(increments.keySet());
+        handler.handle(Future.failedFuture(ar.cause()));
+        return;
+      }
+      linkRepository.incrementVoteCounts(increments, counters -> {
+        if (counters.failed()) {
+          System.err.println("Failed to increment vote counters, counting the votes of " + increments.keySet() + " instead: " + counters.cause());
+          dropVoteCounts(increments.keySet());
+        }
+        handler.handle(Future.succeededFuture(docs.stream().map(this::vote).collect(toList())));
+      });
+    });
+  }
+
+  private void dropVoteCounts(Collection<String> linkIds) {
+    if (linkIds.isEmpty()) {
+      return;
+    }
+    JsonObject query = new JsonObject().put("_id", new JsonObject().put("$in", new JsonArray(new ArrayList<>(linkIds))));
+    mongoClient.updateCollectionWithOptions("links", query, new JsonObject().put("$unset", new JsonObject().put("voteCount", "")),
+      new UpdateOptions().setMulti(true), ar -> {
+        if (ar.failed()) {
+          System.err.println("Failed to drop the vote counters of " + linkIds + ", they may be wrong: " + ar.cause());
+        }
+      });
+  }
+
+  /**
+   * Runs in slices of {@value #BACKFILL_BATCH_SIZE} links. A vote cast on a link between its count and its update is
+   * missed by its counter.
+   */
+  @Override
+  public void backfillVoteCounts(Handler<AsyncResult<Void>> handler) {
+    JsonObject query = new JsonObject().put("voteCount", new JsonObject().put("$exists", false));
+    FindOptions options = new FindOptions().setFields(new JsonObject().put("_id", 1)).setLimit(BACKFILL_BATCH_SIZE);
+    Future<List<JsonObject>> links = Future.future();
+    mongoClient.findWithOptions("links", query, options, links);
+    links.setHandler(ar -> {
+      if (ar.failed() || ar.result().isEmpty()) {
+        handler.handle(ar.mapEmpty());
+        return;
+      }
+      List<String> linkIds = ar.result().stream().map(doc -> doc.getString("_id")).collect(toList());
+      Future<Map<String, Integer>> counts = Future.future();
+      countByLinkIds(linkIds, counts);
+      counts.compose(byId -> {
+        List<BulkOperation> updates = linkIds.stream()
+          .map(linkId -> BulkOperation.createUpdate(
+            new JsonObject().put("_id", linkId).put("voteCount", new JsonObject().put("$exists", false)),
+            new JsonObject().put("$set", new JsonObject().put("voteCount", byId.getOrDefault(linkId, 0)))))
+          .collect(toList());
+        Future<MongoClientBulkWriteResult> written = Future.future();
+        mongoClient.bulkWriteWithOptions("links", updates, new BulkWriteOptions().setOrdered(false), written);
+        return written;
+      }).setHandler(written -> {
+        if (written.failed()) {
+          handler.handle(Future.failedFuture(written.cause()));
+        } else {
+          backfillVoteCounts(handler);
+        }
+      });
+    });
+  }
+
+  Vote vote(JsonObject doc) {
+    return new Vote(
+      doc.getString("_id"),
+      ZonedDateTime.parse(doc.getString("createdAt")),
+      doc.getString("userId"),
+      doc.getString("linkId")
+    );
+  }
+}
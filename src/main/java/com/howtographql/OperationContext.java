@@ -0,0 +1,107 @@
+package com.howtographql;
+
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * GraphQL context of an operation sent over HTTP.
+ * <p>
+ * The operations of a batch share the request and its authentication, but each reports its own extensions.
+ * <p>
+ * Repositories are shared by all the operations, so the MongoDB calls of an operation are attributed to the
+ * operation {@linkplain #call(Supplier) running} on the current thread: see {@link MongoMetrics}. Loads coalesced for
+ * the operations of a batch are not attributed to any of them.
+ */
+public class OperationContext {
+
+  private static final ThreadLocal<OperationContext> CURRENT = new ThreadLocal<>();
+
+  private final RoutingContext routingContext;
+  private final AuthToken auth;
+  private final boolean persistedQuery;
+  private final Map<String, Object> extensions = new LinkedHashMap<>();
+  private final AtomicInteger mongoCalls = new AtomicInteger();
+
+  public OperationContext(RoutingContext routingContext, AuthToken auth, boolean persistedQuery) {
+    this.routingContext = routingContext;
+    this.auth = auth;
+    this.persistedQuery = persistedQuery;
+  }
+
+  public RoutingContext getRoutingContext() {
+    return routingContext;
+  }
+
+  /**
+   * @return the verified token of the request, {@code null} for anonymous requests
+   */
+  public AuthToken getAuth() {
+    return auth;
+  }
+
+  public String getUserId() {
+    return auth == null ? null : auth.getUserId();
+  }
+
+  /**
+   * @return whether the query was sent as a persisted query hash, rather than in full
+   */
+  public boolean isPersistedQuery() {
+    return persistedQuery;
+  }
+
+  public void putExtension(String key, Object value) {
+    extensions.put(key, value);
+  }
+
+  public Map<String, Object> getExtensions() {
+    return extensions;
+  }
+
+  public int getMongoCalls() {
+    return mongoCalls.get();
+  }
+
+  void incrementMongoCalls() {
+    mongoCalls.incrementAndGet();
+  }
+
+  /**
+   * Runs {@code code} on behalf of this operation.
+   */
+  public <T> T call(Supplier<T> code) {
+    OperationContext previous = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      return code.get();
+    } finally {
+      CURRENT.set(previous);
+    }
+  }
+
+  /**
+   * @return the operation running on the current thread, {@code null} if none
+   */
+  public static OperationContext current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * @return {@code handler}, run on behalf of the operation running on the current thread
+   */
+  public static <T> Handler<T> bind(Handler<T> handler) {
+    OperationContext context = CURRENT.get();
+    if (context == null) {
+      return handler;
+    }
+    return result -> context.call(() -> {
+      handler.handle(result);
+      return null;
+    });
+  }
+}
@@ -0,0 +1,146 @@
+package com.howtographql;
+
+import graphql.GraphQLException;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Salted PBKDF2 password hashes, computed on a dedicated worker pool so the event loops never run the key derivation.
+ * <p>
+ * Hashes are stored as {@code pbkdf2$<iterations>$<salt>$<hash>}, so the iteration count can be raised without
+ * invalidating existing hashes. Stored values without this prefix are legacy clear-text passwords and are compared
+ * in constant time; see {@link #needsRehash(String)} to migrate them. The pool queue is bounded: when too many hashes are waiting, new ones fail immediately instead
+ * of piling up latency for every sign-in.
+ */
+public class PasswordHasher {
+
+  private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+  private static final String PREFIX = "pbkdf2$";
+  private static final int SALT_BYTES = 16;
+  private static final int HASH_BITS = 256;
+
+  private final WorkerExecutor executor;
+  private final int iterations;
+  private final int maxQueued;
+  private final Metrics metrics;
+  private final SecureRandom random = new SecureRandom();
+  private final AtomicInteger queued = new AtomicInteger();
+  // Verified for unknown users, so that they take as long as a wrong password
+  private volatile String dummyHash;
+
+  public PasswordHasher(Vertx vertx, int poolSize, int maxQueued, int iterations, Metrics metrics) {
+    this.executor = vertx.createSharedWorkerExecutor("password-hashing", poolSize, 10, TimeUnit.SECONDS);
+    this.iterations = iterations;
+    this.maxQueued = maxQueued;
+    this.metrics = metrics;
+    metrics.gauge("password_hashing_queue_depth", "Password hashes waiting for or running on the worker pool", "", queued::get);
+    // Computed ahead of the first sign-in, on the pool rather than on the event loop creating the hasher
+    executor.<String>executeBlocking(future -> future.complete(dummyHash()), false, null);
+  }
+
+  public void close() {
+    executor.close();
+  }
+
+  public void hash(String password, Handler<AsyncResult<String>> handler) {
+    execute("hash", () -> hash(password, iterations), handler);
+  }
+
+  /**
+   * Completes with {@code false} when {@code stored} is {@code null}, after the same amount of work as a mismatch.
+   */
+  public void verify(String password, String stored, Handler<AsyncResult<Boolean>> handler) {
+    execute("verify", () -> matches(password, stored == null ? dummyHash() : stored) && stored != null, handler);
+  }
+
+  /**
+   * @return whether {@code stored}, a value which was just verified, should be hashed again: it is a legacy
+   * clear-text password, or it was hashed with fewer iterations than configured now
+   */
+  public boolean needsRehash(String stored) {
+    if (!stored.startsWith(PREFIX)) {
+      return true;
+    }
+    String[] parts = stored.split("\\$");
+    return parts.length == 4 && Integer.parseInt(parts[1]) < iterations;
+  }
+
+  private <T> void execute(String operation, Task<T> task, Handler<AsyncResult<T>> handler) {
+    if (queued.incrementAndGet() > maxQueued) {
+      queued.decrementAndGet();
+      metrics.increment("password_hashing_rejected_total", "Password hashes rejected because the worker pool queue was full", "", 1);
+      handler.handle(Future.failedFuture(new GraphQLException("Too many concurrent sign-ins, try again later")));
+      return;
+    }
+    long submitted = System.nanoTime();
+    executor.<T>executeBlocking(future -> {
+      long started = System.nanoTime();
+      metrics.observe("password_hashing_wait_seconds", "Time spent by password hashes in the worker pool queue", Metrics.LATENCY_BUCKETS,
+        "", (started - submitted) / 1e9);
+      try {
+        future.complete(task.run());
+      } finally {
+        queued.decrementAndGet();
+        metrics.observe("password_hashing_seconds", "Password hashing time", Metrics.LATENCY_BUCKETS,
+          Metrics.label("operation", operation), (System.nanoTime() - started) / 1e9);
+      }
+    }, false, OperationContext.bind(handler));
+  }
+
+  private String dummyHash() {
+    String hash = dummyHash;
+    if (hash == null) {
+      // Workers racing here compute equivalent hashes
+      dummyHash = hash = hash("", iterations);
+    }
+    return hash;
+  }
+
+  private String hash(String password, int iterations) {
+    byte[] salt = new byte[SALT_BYTES];
+    random.nextBytes(salt);
+    Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+    return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(derive(password, salt, iterations));
+  }
+
+  private static boolean matches(String password, String stored) {
+    if (!stored.startsWith(PREFIX)) {
+      return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+    }
+    String[] parts = stored.split("\\$");
+    if (parts.length != 4) {
+      return false;
+    }
+    Base64.Decoder decoder = Base64.getDecoder();
+    byte[] expected = decoder.decode(parts[3]);
+    return MessageDigest.isEqual(expected, derive(password, decoder.decode(parts[2]), Integer.parseInt(parts[1])));
+  }
+
+  private static byte[] derive(String password, byte[] salt, int iterations) {
+    PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+    try {
+      return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    } finally {
+      spec.clearPassword();
+    }
+  }
+
+  private interface Task<T> {
+    T run();
+  }
+}
@@ -0,0 +1,147 @@
+package com.howtographql;
+
+import graphql.GraphQLException;
+import graphql.language.AstPrinter;
+import graphql.language.Document;
+import graphql.language.Field;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.parser.Parser;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Local registry of automatic persisted queries, keyed by the SHA-256 hash of the query text.
+ * <p>
+ * Only holds queries registered by clients; queries sent in full are analyzed by the {@link QueryClassifier}.
+ */
+public class PersistedQueries {
+
+  private static final String CACHEABLE_FIELD = "allLinks";
+
+  private final int maxSize;
+  private final Map<String, Entry> entries;
+
+  public PersistedQueries(int maxSize) {
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > PersistedQueries.this.maxSize;
+      }
+    };
+  }
+
+  public Entry lookup(String hash) {
+    synchronized (entries) {
+      return entries.get(hash.toLowerCase());
+    }
+  }
+
+  public Entry register(String hash, String query) {
+    if (!hash.equalsIgnoreCase(Utils.sha256(query))) {
+      throw new GraphQLException("provided sha does not match query");
+    }
+    Entry entry = analyze(query);
+    synchronized (entries) {
+      entries.put(hash.toLowerCase(), entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Parses a query to find out whether it can be served from the response cache, and how to prioritize it.
+   */
+  static Entry analyze(String query) {
+    Document document = parse(query);
+    if (document == null) {
+      return new Entry(query, false, false, false, null);
+    }
+    boolean cacheable = isCacheable(document);
+    // Formatting differences don't make different responses
+    String normalizedQuery = cacheable ? AstPrinter.printAst(document) : null;
+    return new Entry(query, true, isReadOnly(document), cacheable, normalizedQuery);
+  }
+
+  private static Document parse(String query) {
+    try {
+      return new Parser().parseDocument(query);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static boolean isReadOnly(Document document) {
+    return operations(document).stream()
+      .allMatch(operation -> operation.getOperation() == OperationDefinition.Operation.QUERY);
+  }
+
+  // Only reads of the links feed are worth caching, by HTTP intermediaries and the response cache
+  private static boolean isCacheable(Document document) {
+    if (!isReadOnly(document)) {
+      return false;
+    }
+    for (OperationDefinition operation : operations(document)) {
+      for (Selection<?> selection : operation.getSelectionSet().getSelections()) {
+        if (!(selection instanceof Field) || !CACHEABLE_FIELD.equals(((Field) selection).getName())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static List<OperationDefinition> operations(Document document) {
+    return document.getDefinitions().stream()
+      .filter(OperationDefinition.class::isInstance)
+      .map(OperationDefinition.class::cast)
+      .collect(toList());
+  }
+
+  public static class Entry {
+
+    private final String query;
+    private final boolean parsed;
+    private final boolean readOnly;
+    private final boolean cacheable;
+    private final String normalizedQuery;
+
+    Entry(String query, boolean parsed, boolean readOnly, boolean cacheable, String normalizedQuery) {
+      this.query = query;
+      this.parsed = parsed;
+      this.readOnly = readOnly;
+      this.cacheable = cacheable;
+      this.normalizedQuery = normalizedQuery;
+    }
+
+    public String getQuery() {
+      return query;
+    }
+
+    /**
+     * @return {@code false} for queries with syntax errors, which are neither read-only nor cacheable
+     */
+    public boolean isParsed() {
+      return parsed;
+    }
+
+    public boolean isReadOnly() {
+      return readOnly;
+    }
+
+    public boolean isCacheable() {
+      return cacheable;
+    }
+
+    /**
+     * @return the query printed from its syntax tree, for cacheable queries only
+     */
+    public String getNormalizedQuery() {
+      return normalizedQuery;
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package com.howtographql;
+
+import graphql.schema.DataFetchingFieldSelectionSet;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The document fields needed to resolve the GraphQL fields selected on a type; {@code _id} is always included.
+ * <p>
+ * Each type maps its GraphQL fields to the document fields they read. A selected field missing from the mapping
+ * (e.g. added to the schema but not here) makes the projection fall back to {@link #ALL}, so a projection can only
+ * cost performance, never correctness.
+ */
+public class Projection {
+
+  public static final Projection ALL = new Projection(null);
+
+  private static final Map<String, List<String>> LINK_FIELDS = new HashMap<>();
+  private static final Map<String, List<String>> USER_FIELDS = new HashMap<>();
+
+  static {
+    LINK_FIELDS.put("id", Collections.emptyList());
+    LINK_FIELDS.put("url", Collections.singletonList("url"));
+    LINK_FIELDS.put("description", Collections.singletonList("description"));
+    LINK_FIELDS.put("postedBy", Collections.singletonList("postedBy"));
+    LINK_FIELDS.put("voteCount", Collections.singletonList("voteCount"));
+    LINK_FIELDS.put("votes", Collections.emptyList());
+    LINK_FIELDS.put("__typename", Collections.emptyList());
+
+    USER_FIELDS.put("id", Collections.emptyList());
+    USER_FIELDS.put("name", Collections.singletonList("name"));
+    USER_FIELDS.put("email", Collections.singletonList("email"));
+    // Never returned, see Server
+    USER_FIELDS.put("password", Collections.emptyList());
+    USER_FIELDS.put("__typename", Collections.emptyList());
+  }
+
+  private final Set<String> fields;
+
+  private Projection(Set<String> fields) {
+    this.fields = fields;
+  }
+
+  public static Projection link(DataFetchingFieldSelectionSet selectionSet) {
+    return of(selectionSet, LINK_FIELDS);
+  }
+
+  public static Projection user(DataFetchingFieldSelectionSet selectionSet) {
+    return of(selectionSet, USER_FIELDS);
+  }
+
+  private static Projection of(DataFetchingFieldSelectionSet selectionSet, Map<String, List<String>> mapping) {
+    Set<String> set = new LinkedHashSet<>();
+    set.add("_id");
+    for (String field : selectionSet.get().keySet()) {
+      if (field.indexOf('/') >= 0) {
+        // Sub-selection of an object field, resolved from another document
+        continue;
+      }
+      List<String> documentFields = mapping.get(field);
+      if (documentFields == null) {
+        return ALL;
+      }
+      set.addAll(documentFields);
+    }
+    return new Projection(Collections.unmodifiableSet(set));
+  }
+
+  public boolean isAll() {
+    return fields == null;
+  }
+
+  public boolean includes(String field) {
+    return fields == null || fields.contains(field);
+  }
+
+  /**
+   * @return whether everything this projection needs is also in {@code other}
+   */
+  public boolean isCoveredBy(Projection other) {
+    return other.fields == null || (fields != null && other.fields.containsAll(fields));
+  }
+
+  public Projection union(Projection other) {
+    if (fields == null || other.fields == null) {
+      return ALL;
+    }
+    Set<String> set = new LinkedHashSet<>(fields);
+    set.addAll(other.fields);
+    return new Projection(Collections.unmodifiableSet(set));
+  }
+
+  /**
+   * @return the {@code fields} option of a Mongo find, empty for whole documents
+   */
+  public JsonObject toMongoFields() {
+    JsonObject json = new JsonObject();
+    if (fields != null) {
+      fields.forEach(field -> json.put(field, 1));
+    }
+    return json;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Projection)) {
+      return false;
+    }
+    Projection that = (Projection) o;
+    return fields == null ? that.fields == null : fields.equals(that.fields);
+  }
+
+  @Override
+  public int hashCode() {
+    return fields == null ? 0 : fields.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return fields == null ? "ALL" : fields.toString();
+  }
+}
@@ -0,0 +1,42 @@
+package com.howtographql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of the analysis of queries sent in full, keyed by query text.
+ * <p>
+ * Tells the response cache and the admission controller what a query does before it executes, without registering
+ * it as a persisted query: the {@link PersistedQueries} registry only holds the hashes clients registered.
+ */
+public class QueryClassifier {
+
+  private final int maxSize;
+  private final Map<String, PersistedQueries.Entry> entries;
+
+  public QueryClassifier(int maxSize) {
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<String, PersistedQueries.Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, PersistedQueries.Entry> eldest) {
+        return size() > QueryClassifier.this.maxSize;
+      }
+    };
+  }
+
+  public PersistedQueries.Entry classify(String query) {
+    PersistedQueries.Entry entry;
+    synchronized (entries) {
+      entry = entries.get(query);
+    }
+    if (entry != null) {
+      return entry;
+    }
+    // Parse outside the lock, a concurrent miss on the same query only costs a redundant parse
+    entry = PersistedQueries.analyze(query);
+    synchronized (entries) {
+      entries.put(query, entry);
+    }
+    return entry;
+  }
+}
@@ -0,0 +1,167 @@
+package com.howtographql;
+
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.analysis.QueryTraversal;
+import graphql.analysis.QueryVisitorFieldEnvironment;
+import graphql.analysis.QueryVisitorStub;
+import graphql.execution.AbortExecutionException;
+import graphql.execution.ExecutionContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationExecutionParameters;
+import graphql.schema.GraphQLDirective;
+import graphql.schema.GraphQLEnumType;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLScalarType;
+import graphql.schema.GraphQLType;
+import graphql.schema.GraphQLTypeUtil;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Rejects operations exceeding the maximum depth or complexity before any data fetcher runs.
+ * <p>
+ * The cost of an object or list field is given by the {@code @cost} directive in the schema (1 by default),
+ * multiplied by the page size ({@code first}) of every enclosing list field. Scalar and enum fields come with the
+ * object holding them and cost nothing. Introspection fields ({@code __schema}, {@code __type}, {@code __typename})
+ * and their selections are not counted, so that tools can fetch the schema. The computation happens on each
+ * execution rather than during validation: validation is skipped for cached documents and costs depend on
+ * variables.
+ */
+public class QueryCostInstrumentation extends SimpleInstrumentation {
+
+  private final int maxDepth;
+  private final int maxComplexity;
+  private final int maxFirst;
+
+  public QueryCostInstrumentation(int maxDepth, int maxComplexity, int maxFirst) {
+    this.maxDepth = maxDepth;
+    this.maxComplexity = maxComplexity;
+    this.maxFirst = maxFirst;
+  }
+
+  /**
+   * @return the page size actually served for a {@code first} argument, capped to the configured maximum
+   */
+  public static int effectiveFirst(Integer first, int maxFirst) {
+    return first == null || first <= 0 || first > maxFirst ? maxFirst : first;
+  }
+
+  @Override
+  public InstrumentationState createState() {
+    return new CostState();
+  }
+
+  @Override
+  public InstrumentationContext<ExecutionResult> beginExecuteOperation(InstrumentationExecuteOperationParameters parameters) {
+    ExecutionContext executionContext = parameters.getExecutionContext();
+    CostState state = parameters.getInstrumentationState();
+
+    QueryTraversal queryTraversal = QueryTraversal.newQueryTraversal()
+      .schema(executionContext.getGraphQLSchema())
+      .document(executionContext.getDocument())
+      .operationName(executionContext.getOperationDefinition().getName())
+      .variables(executionContext.getVariables())
+      .build();
+    queryTraversal.visitPreOrder(new QueryVisitorStub() {
+      @Override
+      public void visitField(QueryVisitorFieldEnvironment env) {
+        int depth = 1;
+        long cost = isLeaf(env.getFieldDefinition()) ? 0 : fieldCost(env.getFieldDefinition());
+        for (QueryVisitorFieldEnvironment field = env; field != null; field = field.getParentEnvironment()) {
+          if (field.getField().getName().startsWith("__")) {
+            return;
+          }
+          if (field != env) {
+            depth++;
+            cost *= multiplier(field);
+          }
+        }
+        state.depth = Math.max(state.depth, depth);
+        state.complexity += cost;
+      }
+    });
+
+    if (state.depth > maxDepth) {
+      throw new CostExceededException("maximum query depth exceeded " + state.depth + " > " + maxDepth, cost(state));
+    }
+    if (state.complexity > maxComplexity) {
+      throw new CostExceededException("maximum query complexity exceeded " + state.complexity + " > " + maxComplexity, cost(state));
+    }
+    return super.beginExecuteOperation(parameters);
+  }
+
+  private static boolean isLeaf(GraphQLFieldDefinition fieldDefinition) {
+    GraphQLType type = GraphQLTypeUtil.unwrapAll(fieldDefinition.getType());
+    return type instanceof GraphQLScalarType || type instanceof GraphQLEnumType;
+  }
+
+  private int multiplier(QueryVisitorFieldEnvironment env) {
+    if (env.getFieldDefinition().getArgument("first") == null) {
+      return 1;
+    }
+    return effectiveFirst((Integer) env.getArguments().get("first"), maxFirst);
+  }
+
+  private static int fieldCost(GraphQLFieldDefinition fieldDefinition) {
+    GraphQLDirective directive = fieldDefinition.getDirective("cost");
+    if (directive == null || directive.getArgument("value") == null) {
+      return 1;
+    }
+    Object value = directive.getArgument("value").getValue();
+    return value instanceof Number ? ((Number) value).intValue() : 1;
+  }
+
+  @Override
+  public CompletableFuture<ExecutionResult> instrumentExecutionResult(ExecutionResult executionResult, InstrumentationExecutionParameters parameters) {
+    CostState state = parameters.getInstrumentationState();
+    Map<Object, Object> extensions = new LinkedHashMap<>();
+    if (executionResult.getExtensions() != null) {
+      extensions.putAll(executionResult.getExtensions());
+    }
+    extensions.put("cost", cost(state));
+    return CompletableFuture.completedFuture(new ExecutionResultImpl(executionResult.getData(), executionResult.getErrors(), extensions));
+  }
+
+  private Map<String, Object> cost(CostState state) {
+    Map<String, Object> cost = new LinkedHashMap<>();
+    cost.put("depth", state.depth);
+    cost.put("complexity", state.complexity);
+    cost.put("maxDepth", maxDepth);
+    cost.put("maxComplexity", maxComplexity);
+    return cost;
+  }
+
+  /**
+   * Carries the computed cost into the result: graphql-java turns the exception into the result directly, without
+   * calling {@link #instrumentExecutionResult}.
+   */
+  private static class CostExceededException extends AbortExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Object> cost;
+
+    CostExceededException(String message, Map<String, Object> cost) {
+      super(message);
+      this.cost = cost;
+    }
+
+    @Override
+    public ExecutionResult toExecutionResult() {
+      ExecutionResult executionResult = super.toExecutionResult();
+      return new ExecutionResultImpl(executionResult.getData(), executionResult.getErrors(), Collections.singletonMap("cost", cost));
+    }
+  }
+
+  private static class CostState implements InstrumentationState {
+    int depth;
+    long complexity;
+  }
+}
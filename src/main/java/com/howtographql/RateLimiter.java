@@ -0,0 +1,66 @@
+package com.howtographql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets by key, e.g. an email or a client address, shared by all verticle instances.
+ * <p>
+ * Each key may be used {@code burst} times in a row, then {@code rate} times per period. The number of tracked keys
+ * is bounded: the least recently used buckets are forgotten first, which at worst gives them a fresh burst.
+ */
+public class RateLimiter {
+
+  private final int burst;
+  private final double tokensPerNano;
+  private final Map<String, Bucket> buckets;
+  private final LongSupplier nanoTime;
+
+  public RateLimiter(int burst, int rate, long period, TimeUnit unit, int maxKeys) {
+    this(burst, rate, period, unit, maxKeys, System::nanoTime);
+  }
+
+  RateLimiter(int burst, int rate, long period, TimeUnit unit, int maxKeys, LongSupplier nanoTime) {
+    this.burst = burst;
+    this.nanoTime = nanoTime;
+    this.tokensPerNano = (double) rate / unit.toNanos(period);
+    this.buckets = new LinkedHashMap<String, Bucket>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+        return size() > maxKeys;
+      }
+    };
+  }
+
+  /**
+   * Takes a token from the bucket of {@code key}.
+   *
+   * @return {@code false} if the bucket is empty
+   */
+  public boolean tryAcquire(String key) {
+    long now = nanoTime.getAsLong();
+    synchronized (buckets) {
+      Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(burst, now));
+      bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.updatedAt) * tokensPerNano);
+      bucket.updatedAt = now;
+      if (bucket.tokens < 1) {
+        return false;
+      }
+      bucket.tokens--;
+      return true;
+    }
+  }
+
+  private static class Bucket {
+
+    double tokens;
+    long updatedAt;
+
+    Bucket(double tokens, long updatedAt) {
+      this.tokens = tokens;
+      this.updatedAt = updatedAt;
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package com.howtographql;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, time-limited cache of serialized responses, shared by all verticle instances.
+ * <p>
+ * Concurrent misses on a key wait for a single execution. {@link #invalidate()} drops everything, including the
+ * executions in flight: a response computed while a write happened is returned to its callers but not cached.
+ */
+public class ResponseCache {
+
+  private final int maxSize;
+  private final long ttlNanos;
+  private final Map<String, CachedResponse> entries;
+  private final ConcurrentMap<String, CompletableFuture<Response>> inFlight = new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  public ResponseCache(int maxSize, long ttl, TimeUnit unit) {
+    this.maxSize = maxSize;
+    this.ttlNanos = unit.toNanos(ttl);
+    this.entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+        return size() > ResponseCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * @return the cache key of an operation: its normalized query, operation name and variables
+   */
+  public static String key(String normalizedQuery, String operationName, JsonObject variables) {
+    return Utils.sha256(normalizedQuery + '\u0000' + operationName + '\u0000' + (variables == null ? "" : variables.encode()));
+  }
+
+  /**
+   * @return the cached response for {@code key}, or the response of {@code execute}, which is called unless the
+   * same key is already being executed
+   */
+  public CompletableFuture<Response> get(String key, Supplier<CompletableFuture<Response>> execute) {
+    long now = System.nanoTime();
+    synchronized (entries) {
+      CachedResponse cached = entries.get(key);
+      if (cached != null) {
+        if (cached.expiresAt - now >= 0) {
+          hits.incrementAndGet();
+          return CompletableFuture.completedFuture(cached.response);
+        }
+        entries.remove(key);
+      }
+    }
+    CompletableFuture<Response> created = new CompletableFuture<>();
+    CompletableFuture<Response> existing = inFlight.putIfAbsent(key, created);
+    if (existing != null) {
+      coalesced.incrementAndGet();
+      return existing;
+    }
+    misses.incrementAndGet();
+    long startGeneration = generation.get();
+    CompletableFuture<Response> execution;
+    try {
+      execution = execute.get();
+    } catch (RuntimeException e) {
+      execution = new CompletableFuture<>();
+      execution.completeExceptionally(e);
+    }
+    execution.whenComplete((response, throwable) -> {
+      if (throwable == null && response.isCacheable()) {
+        synchronized (entries) {
+          if (generation.get() == startGeneration) {
+            entries.put(key, new CachedResponse(response, System.nanoTime() + ttlNanos));
+          }
+        }
+      }
+      inFlight.remove(key, created);
+      if (throwable == null) {
+        created.complete(response);
+      } else {
+        created.completeExceptionally(throwable);
+      }
+    });
+    return created;
+  }
+
+  public void invalidate() {
+    synchronized (entries) {
+      generation.incrementAndGet();
+      entries.clear();
+    }
+    inFlight.clear();
+    invalidations.incrementAndGet();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * A serialized execution result and its entity tag.
+   */
+  public static class Response {
+
+    private final Buffer body;
+    private final String etag;
+    private final boolean cacheable;
+
+    public Response(Buffer body, boolean cacheable) {
+      this.body = body;
+      this.etag = "\"" + Utils.sha256(body.getBytes()) + "\"";
+      this.cacheable = cacheable;
+    }
+
+    public Buffer getBody() {
+      return body;
+    }
+
+    public String getEtag() {
+      return etag;
+    }
+
+    /**
+     * @return {@code false} for results with errors, which are only shared with the concurrent callers
+     */
+    public boolean isCacheable() {
+      return cacheable;
+    }
+  }
+
+  private static class CachedResponse {
+
+    final Response response;
+    final long expiresAt;
+
+    CachedResponse(Response response, long expiresAt) {
+      this.response = response;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
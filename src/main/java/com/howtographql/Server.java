@@ -1,18 +1,40 @@
 package com.howtographql;
 
 import graphql.ExecutionInput;
+import graphql.ExecutionResult;
 import graphql.GraphQL;
 import graphql.GraphQLException;
+import graphql.execution.instrumentation.ChainedInstrumentation;
+import graphql.execution.instrumentation.Instrumentation;
 import graphql.execution.instrumentation.dataloader.DataLoaderDispatcherInstrumentation;
 import graphql.execution.instrumentation.dataloader.DataLoaderDispatcherInstrumentationOptions;
+import graphql.execution.instrumentation.tracing.TracingInstrumentation;
+import graphql.relay.Connection;
+import graphql.relay.ConnectionCursor;
+import graphql.relay.DefaultConnection;
+import graphql.relay.DefaultConnectionCursor;
+import graphql.relay.DefaultEdge;
+import graphql.relay.DefaultPageInfo;
+import graphql.relay.Edge;
 import graphql.schema.DataFetchingEnvironment;
 import graphql.schema.GraphQLSchema;
 import graphql.schema.idl.RuntimeWiring;
 import graphql.schema.idl.SchemaGenerator;
-import graphql.schema.idl.SchemaParser;
 import graphql.schema.idl.TypeDefinitionRegistry;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.mongo.MongoClient;
 import io.vertx.ext.web.Router;
@@ -20,50 +42,154 @@ import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 import io.vertx.ext.web.handler.StaticHandler;
 import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderOptions;
 import org.dataloader.DataLoaderRegistry;
+import org.reactivestreams.Publisher;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static com.howtographql.Utils.toHandler;
 import static graphql.schema.idl.RuntimeWiring.newRuntimeWiring;
+import static java.util.stream.Collectors.toList;
 
 public class Server extends AbstractVerticle {
 
   private LinkRepository linkRepository;
   private UserRepository userRepository;
   private UserBatchLoader userBatchLoader;
+  private LinkBatchLoader linkBatchLoader;
+  private VoteCountBatchLoader voteCountBatchLoader;
+  private LinkVotesBatchLoader linkVotesBatchLoader;
+  private FeedIndex feedIndex;
+  private EventStream<Link> linkEvents;
+  private EventStream<Vote> voteEvents;
+  private DataLoaderOptions dataLoaderOptions;
+  private int maxFirst;
   private VoteRepository voteRepository;
+  private DocumentCache documentCache;
+  private Metrics metrics;
+  private PersistedQueries persistedQueries;
+  private QueryClassifier queryClassifier;
+  private int cacheMaxAge;
   private GraphQL graphQL;
+  private PasswordHasher passwordHasher;
+  private RateLimiter signinLimiterByEmail;
+  private RateLimiter signinLimiterByAddress;
+  private TokenService tokenService;
+  private MetricsInstrumentation metricsInstrumentation;
+  private boolean tracing;
+  private int maxBatchOperations;
+  private ResponseCache responseCache;
+  private AdmissionController admissionController;
+  private int retryAfter;
+  private long eventLoopLag;
+  private long lagProbeTick;
 
   @Override
-  public void start() {
-
-    MongoClient mongoClient = MongoClient.createShared(vertx, new JsonObject());
-    linkRepository = new LinkRepository(mongoClient);
-    userRepository = new UserRepository(mongoClient);
+  public void start(Future<Void> startFuture) {
+
+    SharedResources sharedResources = SharedResources.get(vertx, config());
+    metrics = sharedResources.getMetrics();
+    passwordHasher = sharedResources.getPasswordHasher();
+    signinLimiterByEmail = sharedResources.getSigninLimiterByEmail();
+    signinLimiterByAddress = sharedResources.getSigninLimiterByAddress();
+    tokenService = sharedResources.getTokenService();
+    responseCache = sharedResources.getResponseCache();
+    admissionController = sharedResources.getAdmissionController();
+    retryAfter = config().getInteger("retryAfter", 1);
+    startLagProbe(config().getLong("lagProbeInterval", 50L));
+
+    MemoryStore memoryStore = sharedResources.getMemoryStore();
+    if (memoryStore != null) {
+      linkRepository = new MemoryLinkRepository(memoryStore);
+      userRepository = new MemoryUserRepository(memoryStore);
+      voteRepository = new MemoryVoteRepository(memoryStore, linkRepository);
+    } else {
+      MongoClient mongoClient = MongoMetrics.wrap(createMongoClient(), metrics, admissionController.getPendingMongoCalls());
+      LinkRepository.SearchStrategy searchStrategy = LinkRepository.SearchStrategy.valueOf(config().getString("linkSearch", "regex").toUpperCase());
+      long writeWindow = config().getLong("writeBatchWindow", 2L);
+      int writeBatchSize = config().getInteger("writeBatchSize", 500);
+      linkRepository = new MongoLinkRepository(mongoClient, searchStrategy, new BulkWriter(vertx, mongoClient, "links", writeWindow, writeBatchSize));
+      userRepository = new MongoUserRepository(mongoClient, sharedResources.getUserCache());
+      voteRepository = new MongoVoteRepository(mongoClient, linkRepository, new BulkWriter(vertx, mongoClient, "votes", writeWindow, writeBatchSize));
+    }
+    Handler<AsyncResult<Void>> indexHandler = ar -> {
+      if (ar.failed()) {
+        ar.cause().printStackTrace();
+      }
+    };
+    linkRepository.createIndexes(indexHandler);
+    userRepository.createIndexes(indexHandler);
+    voteRepository.createIndexes(ar -> {
+      indexHandler.handle(ar);
+      voteRepository.backfillVoteCounts(indexHandler);
+    });
     userBatchLoader = new UserBatchLoader(userRepository);
-    voteRepository = new VoteRepository(mongoClient);
+    linkBatchLoader = new LinkBatchLoader(linkRepository);
+    int subscriptionBuffer = config().getInteger("subscriptionBufferSize", 16);
+    linkEvents = new EventStream<>(subscriptionBuffer);
+    voteEvents = new EventStream<>(subscriptionBuffer);
+    vertx.eventBus().<JsonObject>consumer(FeedIndex.LINK_CREATED, msg -> {
+      JsonObject json = msg.body();
+      linkEvents.emit(new Link(json.getString("id"), json.getString("url"), json.getString("description"), json.getString("postedBy"), 0));
+    });
+    vertx.eventBus().<JsonObject>consumer(FeedIndex.VOTE_CREATED, msg -> {
+      JsonObject json = msg.body();
+      voteEvents.emit(new Vote(json.getString("id"), ZonedDateTime.parse(json.getString("createdAt")), json.getString("userId"), json.getString("linkId")));
+    });
 
-    String schema = vertx.fileSystem().readFileBlocking("schema.graphqls").toString();
+    feedIndex = sharedResources.getFeedIndex();
+    voteCountBatchLoader = new VoteCountBatchLoader(voteRepository);
+    linkVotesBatchLoader = new LinkVotesBatchLoader(voteRepository);
 
-    SchemaParser schemaParser = new SchemaParser();
-    TypeDefinitionRegistry typeDefinitionRegistry = schemaParser.parse(schema);
+    // Large key sets are split into bounded $in queries, dispatched concurrently
+    dataLoaderOptions = DataLoaderOptions.newOptions()
+      .setMaxBatchSize(config().getInteger("maxBatchSize", 500));
+
+    maxFirst = config().getInteger("maxFirst", 500);
+    maxBatchOperations = config().getInteger("maxBatchOperations", 10);
+
+    TypeDefinitionRegistry typeDefinitionRegistry = sharedResources.getTypeDefinitionRegistry();
 
     RuntimeWiring runtimeWiring = newRuntimeWiring()
       .scalar(Scalars.dateTime)
-      .type("Query", builder -> builder.dataFetcher("allLinks", this::getAllLinks))
+      .type("Query", builder -> {
+        return builder.dataFetcher("allLinks", this::getAllLinks)
+          .dataFetcher("linksConnection", this::getLinksConnection)
+          .dataFetcher("feed", this::getFeed);
+      })
       .type("Mutation", builder -> {
         return builder.dataFetcher("createLink", this::createLink)
+          .dataFetcher("createLinks", this::createLinks)
+          .dataFetcher("createVotes", this::createVotes)
           .dataFetcher("createUser", this::createUser)
           .dataFetcher("signinUser", this::signinUser)
           .dataFetcher("createVote", this::createVote);
       })
-      .type("Link", builder -> builder.dataFetcher("postedBy", this::getLinkPostedBy))
+      .type("Subscription", builder -> {
+        return builder.dataFetcher("newLink", env -> linkEvents.publisher())
+          .dataFetcher("newVote", env -> voteEvents.publisher());
+      })
+      .type("Link", builder -> {
+        return builder.dataFetcher("postedBy", this::getLinkPostedBy)
+          .dataFetcher("votes", this::getLinkVotes)
+          .dataFetcher("voteCount", this::getLinkVoteCount);
+      })
+      .type("User", builder -> {
+        // Only the hash is stored, and it is nobody's business
+        return builder.dataFetcher("password", env -> null);
+      })
       .type("Vote", builder -> {
         return builder.dataFetcher("user", this::getVoteOwner)
           .dataFetcher("link", this::getVoteSubject);
@@ -79,48 +205,96 @@ public class Server extends AbstractVerticle {
     DataLoaderDispatcherInstrumentation dispatcherInstrumentation
       = new DataLoaderDispatcherInstrumentation(options);
 
+    documentCache = sharedResources.getDocumentCache();
+
+    QueryCostInstrumentation costInstrumentation = new QueryCostInstrumentation(
+      config().getInteger("maxQueryDepth", 10),
+      config().getInteger("maxQueryComplexity", 5000),
+      maxFirst);
+
+    List<Instrumentation> instrumentations = new ArrayList<>();
+    instrumentations.add(costInstrumentation);
+    metricsInstrumentation = sharedResources.getMetricsInstrumentation();
+    instrumentations.add(metricsInstrumentation);
+    tracing = config().getBoolean("tracing", false);
+    if (tracing) {
+      instrumentations.add(new TracingInstrumentation());
+    }
+    instrumentations.add(new DeferInstrumentation().prefetch("postedBy", this::prefetchPosters));
+    instrumentations.add(dispatcherInstrumentation);
+    ChainedInstrumentation instrumentation = new ChainedInstrumentation(instrumentations);
+
     graphQL = GraphQL.newGraphQL(graphQLSchema)
-      .instrumentation(dispatcherInstrumentation)
+      .instrumentation(instrumentation)
+      .preparsedDocumentProvider(documentCache)
       .build();
 
+    persistedQueries = sharedResources.getPersistedQueries();
+    queryClassifier = sharedResources.getQueryClassifier();
+    cacheMaxAge = config().getInteger("cacheMaxAge", 5);
+
     Router router = Router.router(vertx);
     router.route("/graphql").handler(BodyHandler.create());
     router.route("/graphql").handler(this::handleGraphQL);
+    router.get("/metrics").handler(this::handleMetrics);
     router.route().handler(StaticHandler.create());
 
     vertx.createHttpServer()
       .requestHandler(router)
-      .listen(8888, ar -> {
+      .websocketHandler(new WebSocketSubscriptions("/graphql", graphQL, this::subscriptionDataLoaderRegistry,
+        ws -> admit(AdmissionController.Priority.ANONYMOUS, null, ws.remoteAddress().host())))
+      .listen(config().getInteger("http.port", 8888), ar -> {
         if (ar.succeeded()) {
           System.out.println("Ready");
+          startFuture.complete();
         } else {
-          ar.cause().printStackTrace();
+          startFuture.fail(ar.cause());
         }
       });
   }
 
+  /**
+   * Measures how late the timers of this verticle's event loop fire, a direct measure of the queueing delay.
+   */
+  private void startLagProbe(long interval) {
+    long intervalNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+    lagProbeTick = System.nanoTime();
+    vertx.setPeriodic(interval, id -> {
+      long now = System.nanoTime();
+      eventLoopLag = Math.max(0, now - lagProbeTick - intervalNanos);
+      lagProbeTick = now;
+    });
+    metrics.gauge("event_loop_lag_seconds", "Delay of the event loop timers", Metrics.label("loop", Thread.currentThread().getName()), () -> eventLoopLag / 1e9);
+  }
+
+  @Override
+  public void stop() {
+    SharedResources.release(vertx);
+  }
+
+  protected MongoClient createMongoClient() {
+    // Shared clients use a single connection pool for all the verticle instances
+    return MongoClient.createShared(vertx, config().getJsonObject("mongo", new JsonObject()));
+  }
+
+  GraphQL getGraphQL() {
+    return graphQL;
+  }
+
+  DataLoaderOptions getDataLoaderOptions() {
+    return dataLoaderOptions;
+  }
+
   private CompletableFuture<User> getVoteOwner(DataFetchingEnvironment env) {
-    CompletableFuture<User> cf = new CompletableFuture<>();
     Vote vote = env.getSource();
     String userId = vote.getUserId();
-    if (userId == null) {
-      cf.complete(null);
-    } else {
-      userRepository.findById(userId, toHandler(cf));
-    }
-    return cf;
+    return userId == null ? CompletableFuture.completedFuture(null) : env.<UserKey, User>getDataLoader("user").load(new UserKey(userId, Projection.user(env.getSelectionSet())));
   }
 
   private CompletableFuture<Link> getVoteSubject(DataFetchingEnvironment env) {
-    CompletableFuture<Link> cf = new CompletableFuture<>();
     Vote vote = env.getSource();
     String linkId = vote.getLinkId();
-    if (linkId == null) {
-      cf.complete(null);
-    } else {
-      linkRepository.findById(linkId, toHandler(cf));
-    }
-    return cf;
+    return linkId == null ? CompletableFuture.completedFuture(null) : env.<String, Link>getDataLoader("link").load(linkId);
   }
 
   private CompletableFuture<Vote> createVote(DataFetchingEnvironment env) {
@@ -128,98 +302,650 @@ public class Server extends AbstractVerticle {
     ZonedDateTime now = Instant.now().atZone(ZoneOffset.UTC);
     Vote vote = new Vote(now, env.getArgument("userId"), env.getArgument("linkId"));
     voteRepository.saveVote(vote, toHandler(cf));
-    return cf;
+    return cf.thenApply(saved -> {
+      // Cached feeds may select voteCount or votes
+      invalidateResponses();
+      publishVote(saved);
+      return saved;
+    });
+  }
+
+  private CompletableFuture<List<Vote>> createVotes(DataFetchingEnvironment env) {
+    CompletableFuture<List<Vote>> cf = new CompletableFuture<>();
+    ZonedDateTime now = Instant.now().atZone(ZoneOffset.UTC);
+    List<Map<String, Object>> args = env.getArgument("votes");
+    List<Vote> votes = args.stream()
+      .map(arg -> new Vote(now, (String) arg.get("userId"), (String) arg.get("linkId")))
+      .collect(toList());
+    voteRepository.saveVotes(votes, toHandler(cf));
+    return cf.thenApply(saved -> {
+      invalidateResponses();
+      saved.forEach(this::publishVote);
+      return saved;
+    });
+  }
+
+  private void publishVote(Vote vote) {
+    JsonObject event = new JsonObject()
+      .put("id", vote.getId())
+      .put("createdAt", Scalars.dateTime.getCoercing().serialize(vote.getCreatedAt()))
+      .put("linkId", vote.getLinkId())
+      .put("userId", vote.getUserId());
+    vertx.eventBus().publish(FeedIndex.VOTE_CREATED, event);
   }
 
   private CompletableFuture<User> getLinkPostedBy(DataFetchingEnvironment env) {
     Link link = env.getSource();
     String userId = link.getUserId();
-    return userId == null ? CompletableFuture.completedFuture(null) : env.<String, User>getDataLoader("user").load(userId);
+    return userId == null ? CompletableFuture.completedFuture(null) : env.<UserKey, User>getDataLoader("user").load(new UserKey(userId, Projection.user(env.getSelectionSet())));
+  }
+
+  private CompletableFuture<List<Vote>> getLinkVotes(DataFetchingEnvironment env) {
+    Link link = env.getSource();
+    int first = QueryCostInstrumentation.effectiveFirst(env.getArgument("first"), maxFirst);
+    LinkVotesKey key = new LinkVotesKey(link.getId(), env.getArgument("after"), first);
+    return env.<LinkVotesKey, List<Vote>>getDataLoader("linkVotes").load(key)
+      .thenApply(votes -> votes == null ? Collections.emptyList() : votes);
+  }
+
+  private CompletableFuture<Integer> getLinkVoteCount(DataFetchingEnvironment env) {
+    Link link = env.getSource();
+    if (link.getVoteCount() != null) {
+      return CompletableFuture.completedFuture(link.getVoteCount());
+    }
+    // Links without a counter, created before it existed or whose counter was dropped, fall back to the batched aggregation
+    return env.<String, Integer>getDataLoader("voteCount").load(link.getId())
+      .thenApply(count -> count == null ? 0 : count);
   }
 
   private CompletableFuture<SigninPayload> signinUser(DataFetchingEnvironment env) {
     CompletableFuture<SigninPayload> cf = new CompletableFuture<>();
     AuthData auth = new JsonObject((Map<String, Object>) env.getArgument("auth")).mapTo(AuthData.class);
+    if (!signinAllowed(env, auth.getEmail())) {
+      metrics.increment("signin_rate_limited_total", "Sign-in attempts rejected by the rate limiter", "", 1);
+      cf.completeExceptionally(new GraphQLException("Too many sign-in attempts, try again later"));
+      return cf;
+    }
     Future<User> future = Future.future();
     userRepository.findByEmail(auth.getEmail(), future);
     future.compose(user -> {
-      if (user.getPassword().equals(auth.getPassword())) {
-        return Future.succeededFuture(new SigninPayload(user.getId(), user));
-      }
-      return Future.failedFuture(new GraphQLException("Invalid credentials"));
+      // Unknown emails are verified too, so that they cannot be told apart by response time
+      Future<Boolean> verified = Future.future();
+      passwordHasher.verify(auth.getPassword(), user == null ? null : user.getPassword(), verified);
+      return verified.compose(matches -> {
+        if (matches) {
+          if (passwordHasher.needsRehash(user.getPassword())) {
+            rehash(user, auth.getPassword());
+          }
+          return Future.succeededFuture(new SigninPayload(tokenService.issue(user), user));
+        }
+        return Future.<SigninPayload>failedFuture(new GraphQLException("Invalid credentials"));
+      });
     }).setHandler(toHandler(cf));
     return cf;
   }
 
+  /**
+   * Replaces a legacy or outdated stored password with a new hash, without delaying the sign-in. When the hashing
+   * pool is busy, this is left to a later sign-in.
+   */
+  private void rehash(User user, String password) {
+    passwordHasher.hash(password, hashed -> {
+      if (hashed.succeeded()) {
+        userRepository.updatePassword(user.getId(), user.getPassword(), hashed.result(), ar -> {
+          if (ar.failed()) {
+            ar.cause().printStackTrace();
+          }
+        });
+      }
+    });
+  }
+
+  private boolean signinAllowed(DataFetchingEnvironment env, String email) {
+    if (!signinLimiterByEmail.tryAcquire(email)) {
+      return false;
+    }
+    if (env.getContext() instanceof OperationContext) {
+      OperationContext context = env.getContext();
+      return signinLimiterByAddress.tryAcquire(context.getRoutingContext().request().remoteAddress().host());
+    }
+    return true;
+  }
+
   private CompletableFuture<Link> createLink(DataFetchingEnvironment env) {
     CompletableFuture<Link> cf = new CompletableFuture<>();
-    RoutingContext rc = env.getContext();
-    User user = rc.get("user");
-    Link link = new Link(env.getArgument("url"), env.getArgument("description"), user == null ? null : user.getId());
+    OperationContext context = env.getContext();
+    Link link = new Link(env.getArgument("url"), env.getArgument("description"), context.getUserId());
     linkRepository.saveLink(link, toHandler(cf));
-    return cf;
+    return cf.thenApply(saved -> {
+      invalidateResponses();
+      publishLink(saved);
+      return saved;
+    });
+  }
+
+  private CompletableFuture<List<Link>> createLinks(DataFetchingEnvironment env) {
+    CompletableFuture<List<Link>> cf = new CompletableFuture<>();
+    OperationContext context = env.getContext();
+    String userId = context.getUserId();
+    List<Map<String, Object>> args = env.getArgument("links");
+    List<Link> links = args.stream()
+      .map(arg -> new Link((String) arg.get("url"), (String) arg.get("description"), userId))
+      .collect(toList());
+    linkRepository.saveLinks(links, toHandler(cf));
+    return cf.thenApply(saved -> {
+      invalidateResponses();
+      saved.forEach(this::publishLink);
+      return saved;
+    });
+  }
+
+  private void publishLink(Link link) {
+    vertx.eventBus().publish(FeedIndex.LINK_CREATED, new JsonObject().put("id", link.getId()).put("url", link.getUrl()).put("description", link.getDescription()).put("postedBy", link.getUserId()));
   }
 
   private CompletableFuture<User> createUser(DataFetchingEnvironment env) {
     CompletableFuture<User> cf = new CompletableFuture<>();
     AuthData auth = new JsonObject((Map<String, Object>) env.getArgument("authProvider")).mapTo(AuthData.class);
-    User user = new User(env.getArgument("name"), auth.getEmail(), auth.getPassword());
-    userRepository.saveUser(user, toHandler(cf));
-    return cf;
+    Future<String> hashed = Future.future();
+    passwordHasher.hash(auth.getPassword(), hashed);
+    hashed.compose(hash -> {
+      Future<User> saved = Future.future();
+      userRepository.saveUser(new User(env.getArgument("name"), auth.getEmail(), hash), saved);
+      return saved;
+    }).setHandler(toHandler(cf));
+    return cf.thenApply(saved -> {
+      invalidateResponses();
+      return saved;
+    });
+  }
+
+  private void invalidateResponses() {
+    if (responseCache != null) {
+      responseCache.invalidate();
+    }
   }
 
   private CompletableFuture<List<Link>> getAllLinks(DataFetchingEnvironment env) {
     CompletableFuture<List<Link>> cf = new CompletableFuture<>();
+    LinkFilter filter = linkFilter(env);
+    int first = QueryCostInstrumentation.effectiveFirst(env.getArgument("first"), maxFirst);
+    linkRepository.getAllLinks(filter, env.getArgument("skip"), first, Projection.link(env.getSelectionSet()), toHandler(cf));
+    return cf;
+  }
+
+  /**
+   * Loads the posters of a list of links in a single batch, for their deferred {@code postedBy} fields.
+   */
+  private void prefetchPosters(DataFetchingEnvironment env, List<?> links) {
+    Projection projection = Projection.user(env.getSelectionSet().getField("postedBy").getSelectionSet());
+    DataLoader<UserKey, User> userLoader = env.getDataLoader("user");
+    for (Object link : links) {
+      if (link instanceof Link && ((Link) link).getUserId() != null) {
+        userLoader.load(new UserKey(((Link) link).getUserId(), projection));
+      }
+    }
+    userLoader.dispatch();
+  }
+
+  private LinkFilter linkFilter(DataFetchingEnvironment env) {
     Map<String, Object> arg = env.getArgument("filter");
     LinkFilter filter = arg == null ? null : new JsonObject(arg).mapTo(LinkFilter.class);
-    linkRepository.getAllLinks(filter, env.getArgument("skip"), env.getArgument("first"), toHandler(cf));
-    return cf;
+    LinkRepository.SearchStrategy strategy = linkRepository.searchStrategy(filter);
+    if (strategy != null && env.getContext() instanceof OperationContext) {
+      OperationContext context = env.getContext();
+      context.putExtension("linkSearch", strategy.name().toLowerCase());
+    }
+    return filter;
+  }
+
+  private CompletableFuture<Connection<Link>> getLinksConnection(DataFetchingEnvironment env) {
+    String after = env.getArgument("after");
+    String afterId;
+    try {
+      afterId = after == null ? null : decodeCursor(after);
+    } catch (IllegalArgumentException e) {
+      CompletableFuture<Connection<Link>> failed = new CompletableFuture<>();
+      failed.completeExceptionally(new GraphQLException("Invalid cursor: " + after));
+      return failed;
+    }
+    CompletableFuture<List<Link>> cf = new CompletableFuture<>();
+    LinkFilter filter = linkFilter(env);
+    int first = QueryCostInstrumentation.effectiveFirst(env.getArgument("first"), maxFirst);
+    // Fetch one extra link to find out whether there is a next page
+    linkRepository.getLinksAfter(filter, afterId, first + 1, toHandler(cf));
+    return cf.thenApply(links -> {
+      boolean hasNextPage = links.size() > first;
+      List<Edge<Link>> edges = links.stream()
+        .limit(first)
+        .map(link -> new DefaultEdge<>(link, new DefaultConnectionCursor(encodeCursor(link.getId()))))
+        .collect(toList());
+      ConnectionCursor startCursor = edges.isEmpty() ? null : edges.get(0).getCursor();
+      ConnectionCursor endCursor = edges.isEmpty() ? null : edges.get(edges.size() - 1).getCursor();
+      return new DefaultConnection<>(edges, new DefaultPageInfo(startCursor, endCursor, after != null, hasNextPage));
+    });
+  }
+
+  private Connection<Link> getFeed(DataFetchingEnvironment env) {
+    int first = QueryCostInstrumentation.effectiveFirst(env.getArgument("first"), maxFirst);
+    String after = env.getArgument("after");
+    FeedIndex.Position position;
+    try {
+      // Feed cursors are positions in the ranking: the ranking time, score and id of a link
+      position = after == null ? null : FeedIndex.Position.decode(decodeCursor(after));
+    } catch (IllegalArgumentException e) {
+      throw new GraphQLException("Invalid cursor: " + after);
+    }
+    // Fetch one extra link to find out whether there is a next page
+    List<FeedIndex.RankedLink> ranked = feedIndex.page(position, first + 1);
+    List<Edge<Link>> edges = ranked.stream()
+      .limit(first)
+      .map(link -> new DefaultEdge<>(link.getLink(), new DefaultConnectionCursor(encodeCursor(link.getPosition().encode()))))
+      .collect(toList());
+    ConnectionCursor startCursor = edges.isEmpty() ? null : edges.get(0).getCursor();
+    ConnectionCursor endCursor = edges.isEmpty() ? null : edges.get(edges.size() - 1).getCursor();
+    return new DefaultConnection<>(edges, new DefaultPageInfo(startCursor, endCursor, after != null, ranked.size() > first));
+  }
+
+  private static String encodeCursor(String id) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String decodeCursor(String cursor) {
+    return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Events of a subscription are executed one by one, outside of the dispatching done for queries: don't batch.
+   */
+  private DataLoaderRegistry subscriptionDataLoaderRegistry() {
+    return dataLoaderRegistry(new DataLoaderOptions(dataLoaderOptions).setBatchingEnabled(false));
+  }
+
+  DataLoaderRegistry dataLoaderRegistry(DataLoaderOptions options) {
+    return dataLoaderRegistry(new DataLoaderRegistry(), options);
+  }
+
+  private DataLoaderRegistry dataLoaderRegistry(DataLoaderRegistry registry, DataLoaderOptions options) {
+    registry.register("user", DataLoader.newMappedDataLoader(userBatchLoader, options));
+    registry.register("link", DataLoader.newMappedDataLoader(linkBatchLoader, options));
+    registry.register("linkVotes", DataLoader.newMappedDataLoader(linkVotesBatchLoader, options));
+    registry.register("voteCount", DataLoader.newMappedDataLoader(voteCountBatchLoader, options));
+    return registry;
+  }
+
+  private void handleMetrics(RoutingContext rc) {
+    rc.response()
+      .putHeader(HttpHeaders.CONTENT_TYPE, "text/plain; version=0.0.4")
+      .end(metrics.scrape());
   }
 
   private void handleGraphQL(RoutingContext rc) {
+    boolean get = rc.request().method() == HttpMethod.GET;
+
+    JsonObject body = null;
+    JsonArray batch = null;
+    try {
+      if (get) {
+        body = readQueryParams(rc);
+      } else if (isArray(rc.getBody())) {
+        batch = new JsonArray(rc.getBody());
+      } else {
+        body = new JsonObject(rc.getBody());
+      }
+    } catch (DecodeException e) {
+      rc.fail(400);
+      return;
+    }
+
     String authorization = rc.request().getHeader("Authorization");
     String token = authorization == null ? null : authorization.replace("Bearer ", "");
+    AuthToken auth = null;
+    if (token != null) {
+      auth = tokenService.verify(token);
+      if (auth == null) {
+        rc.response().setStatusCode(401).putHeader("WWW-Authenticate", "Bearer");
+        endWithError(rc, "Invalid or expired token", "UNAUTHENTICATED");
+        return;
+      }
+    }
 
-    Future<User> future = Future.future();
-    if (token == null) {
-      future.complete();
+    if (batch != null) {
+      handleBatch(rc, batch, auth);
+      return;
+    }
+
+    OperationRequest request = new OperationRequest(body, get);
+    if (request.errorCode != null) {
+      if (request.errorCode.equals("BAD_REQUEST")) {
+        rc.fail(400);
+      } else {
+        endWithError(rc, request.errorMessage, request.errorCode);
+      }
+      return;
+    }
+    if (get && (request.entry == null || !request.entry.isReadOnly())) {
+      rc.response().setStatusCode(405).putHeader(HttpHeaders.ALLOW, "POST");
+      endWithError(rc, "Only queries can be sent with GET", "METHOD_NOT_ALLOWED");
+      return;
+    }
+    boolean parsed = request.entry.isParsed();
+    AdmissionController.Ticket ticket = admit(priority(parsed && !request.entry.isReadOnly(), !parsed, auth), auth, rc.request().remoteAddress().host());
+    if (!ticket.isAdmitted()) {
+      reject(rc, ticket);
+      return;
+    }
+    boolean cacheable = token == null && request.entry != null && request.entry.isCacheable();
+
+    OperationContext context = new OperationContext(rc, auth, request.hash != null);
+    if (cacheable && responseCache != null) {
+      JsonObject operation = body;
+      String key = ResponseCache.key(request.entry.getNormalizedQuery(), body.getString("operationName"), body.getJsonObject("variables"));
+      Context vertxContext = vertx.getOrCreateContext();
+      CompletableFuture<ResponseCache.Response> response = responseCache.get(key, () -> execute(context, operation, request.query, dataLoaderRegistry(dataLoaderOptions))
+        .thenCompose(executionResult -> completeSpecification(executionResult, context))
+        .thenApply(result -> new ResponseCache.Response(Json.encodeToBuffer(result), !result.containsKey("errors"))));
+      response.whenComplete((cached, throwable) -> {
+        ticket.release();
+        // Coalesced requests complete on the event loop of the request which executed the operation
+        if (Vertx.currentContext() == vertxContext) {
+          endCached(rc, cached, throwable, get);
+        } else {
+          vertxContext.runOnContext(v -> endCached(rc, cached, throwable, get));
+        }
+      });
+      return;
+    }
+
+    execute(context, body, request.query, dataLoaderRegistry(dataLoaderOptions))
+      .whenComplete((executionResult, throwable) -> {
+        if (throwable != null) {
+          ticket.release();
+          rc.fail(throwable);
+          return;
+        }
+        Publisher<DeferInstrumentation.DeferredResult> deferred = IncrementalDelivery.deferredResults(executionResult);
+        Map<String, Object> result = toSpecification(executionResult, context);
+        if (deferred == null) {
+          ticket.release();
+          if (get && cacheable && executionResult.getErrors().isEmpty()) {
+            endCacheable(rc, new ResponseCache.Response(Json.encodeToBuffer(result), true));
+          } else {
+            JsonResponseWriter.write(rc.response(), result);
+          }
+        } else if (IncrementalDelivery.accepts(rc.request())) {
+          IncrementalDelivery.write(rc.response(), result, deferred).whenComplete((v, t) -> ticket.release());
+        } else {
+          IncrementalDelivery.merge(result, deferred).whenComplete((merged, t) -> {
+            ticket.release();
+            if (t == null) {
+              JsonResponseWriter.write(rc.response(), merged);
+            } else {
+              rc.fail(t);
+            }
+          });
+        }
+      });
+  }
+
+  /**
+   * Writes come first, then authenticated reads. Anonymous reads are shed first, as well as queries which don't
+   * parse: they are not worth more than a syntax error.
+   */
+  private static AdmissionController.Priority priority(boolean write, boolean unparsed, AuthToken auth) {
+    if (write) {
+      return AdmissionController.Priority.MUTATION;
+    }
+    return auth != null && !unparsed ? AdmissionController.Priority.QUERY : AdmissionController.Priority.ANONYMOUS;
+  }
+
+  /**
+   * Admits an operation on this event loop.
+   */
+  private AdmissionController.Ticket admit(AdmissionController.Priority priority, AuthToken auth, String address) {
+    String userId = auth == null ? null : auth.getUserId();
+    AdmissionController.Ticket ticket = admissionController.tryAdmit(priority, userId, address, eventLoopLag);
+    if (!ticket.isAdmitted()) {
+      metrics.increment("admission_rejected_total", "Operations rejected by the admission controller",
+        Metrics.label("reason", ticket.getRejection()) + "," + Metrics.label("priority", priority.name().toLowerCase()), 1);
+    }
+    return ticket;
+  }
+
+  private void reject(RoutingContext rc, AdmissionController.Ticket ticket) {
+    // Clients over their own limit are told apart from a server shedding load
+    boolean overloaded = ticket.getRejection().equals("OVERLOADED");
+    rc.response()
+      .setStatusCode(overloaded ? 503 : 429)
+      .putHeader("Retry-After", String.valueOf(retryAfter));
+    endWithError(rc, overloaded ? "Server overloaded, retry later" : "Too many concurrent requests", ticket.getRejection());
+  }
+
+  private void endCached(RoutingContext rc, ResponseCache.Response response, Throwable throwable, boolean get) {
+    if (throwable != null) {
+      rc.fail(throwable);
+    } else if (get && response.isCacheable()) {
+      endCacheable(rc, response);
     } else {
-      userRepository.findById(token, future);
+      rc.response().putHeader(HttpHeaders.CONTENT_TYPE, "application/json").end(response.getBody());
+    }
+  }
+
+  /**
+   * Executes the operations of a JSON array concurrently, and responds with the array of their results, in order.
+   * <p>
+   * The operations share the authentication and the DataLoaders: a user is loaded once for the whole batch, and
+   * the loads of all the operations are dispatched together. An operation failing does not fail the others.
+   */
+  private void handleBatch(RoutingContext rc, JsonArray batch, AuthToken auth) {
+    if (batch.size() > maxBatchOperations) {
+      rc.response().setStatusCode(413);
+      endWithError(rc, "A batch cannot hold more than " + maxBatchOperations + " operations", "BATCH_TOO_LARGE");
+      return;
+    }
+    List<OperationRequest> requests = new ArrayList<>(batch.size());
+    boolean write = false;
+    boolean unparsed = false;
+    for (Object item : batch) {
+      OperationRequest request = item instanceof JsonObject ? new OperationRequest((JsonObject) item, false) : null;
+      if (request != null && request.entry != null) {
+        write |= request.entry.isParsed() && !request.entry.isReadOnly();
+        unparsed |= !request.entry.isParsed();
+      }
+      requests.add(request);
+    }
+    AdmissionController.Ticket ticket = admit(priority(write, unparsed, auth), auth, rc.request().remoteAddress().host());
+    if (!ticket.isAdmitted()) {
+      reject(rc, ticket);
+      return;
     }
+    DataLoaderRegistry registry = dataLoaderRegistry(new CoalescingDataLoaderRegistry(vertx.getOrCreateContext()), dataLoaderOptions);
+    List<CompletableFuture<Map<String, Object>>> results = new ArrayList<>(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      OperationRequest request = requests.get(i);
+      if (request == null) {
+        results.add(CompletableFuture.completedFuture(errorResult("Operations must be JSON objects", "BAD_REQUEST")));
+        continue;
+      }
+      if (request.errorCode != null) {
+        String message = request.errorMessage == null ? "Missing query" : request.errorMessage;
+        results.add(CompletableFuture.completedFuture(errorResult(message, request.errorCode)));
+        continue;
+      }
+      OperationContext context = new OperationContext(rc, auth, request.hash != null);
+      results.add(execute(context, batch.getJsonObject(i), request.query, registry)
+        .thenCompose(executionResult -> completeSpecification(executionResult, context))
+        .exceptionally(throwable -> errorResult(throwable.getMessage(), "INTERNAL_SERVER_ERROR")));
+    }
+    CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).whenComplete((v, throwable) -> {
+      ticket.release();
+      metricsInstrumentation.recordStatistics(registry);
+      JsonResponseWriter.write(rc.response(), results.stream().map(CompletableFuture::join).collect(toList()));
+    });
+  }
 
-    future.setHandler(ar -> {
-      if (ar.succeeded()) {
+  private CompletableFuture<ExecutionResult> execute(OperationContext context, JsonObject body, String query, DataLoaderRegistry registry) {
+    ExecutionInput.Builder builder = ExecutionInput.newExecutionInput()
+      .context(context);
 
-        rc.put("user", ar.result());
+    builder.query(query);
 
-        ExecutionInput.Builder builder = ExecutionInput.newExecutionInput()
-          .context(rc);
+    String operationName = body.getString("operationName");
+    if (operationName != null) {
+      builder.operationName(operationName);
+    }
 
-        JsonObject body = new JsonObject(rc.getBody());
-        String query = body.getString("query");
-        builder.query(query);
+    JsonObject variables = body.getJsonObject("variables");
+    if (variables != null) {
+      builder.variables(variables.getMap());
+    }
 
-        JsonObject variables = body.getJsonObject("variables");
-        if (variables != null) {
-          builder.variables(variables.getMap());
-        }
+    builder.dataLoaderRegistry(registry);
 
-        DataLoader<String, User> characterDataLoader = DataLoader.newDataLoader(userBatchLoader);
-        DataLoaderRegistry registry = new DataLoaderRegistry();
-        registry.register("user", characterDataLoader);
-        builder.dataLoaderRegistry(registry);
+    CompletableFuture<ExecutionResult> result = context.call(() -> graphQL.executeAsync(builder.build()));
+    if (!tracing) {
+      return result;
+    }
+    return result.thenApply(executionResult -> {
+      context.putExtension("mongoCalls", context.getMongoCalls());
+      return executionResult;
+    });
+  }
 
-        graphQL.executeAsync(builder.build())
-          .whenComplete((executionResult, throwable) -> {
-            if (throwable == null) {
-              rc.response().end(new JsonObject(executionResult.toSpecification()).toBuffer());
-            } else {
-              rc.fail(throwable);
-            }
-          });
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> toSpecification(ExecutionResult executionResult, OperationContext context) {
+    Map<String, Object> result = executionResult.toSpecification();
+    Map<Object, Object> extensions = (Map<Object, Object>) result.get("extensions");
+    if (extensions != null && extensions.containsKey(GraphQL.DEFERRED_RESULTS)) {
+      // Delivered separately, see IncrementalDelivery
+      Map<Object, Object> copy = new LinkedHashMap<>(extensions);
+      copy.remove(GraphQL.DEFERRED_RESULTS);
+      if (copy.isEmpty()) {
+        result.remove("extensions");
       } else {
-        rc.fail(ar.cause());
+        result.put("extensions", copy);
       }
-    });
+    }
+    context.getExtensions().forEach((key, value) -> addExtension(result, key, value));
+    return result;
+  }
+
+  /**
+   * @return the result of an operation, including its deferred fields
+   */
+  private static CompletableFuture<Map<String, Object>> completeSpecification(ExecutionResult executionResult, OperationContext context) {
+    Publisher<DeferInstrumentation.DeferredResult> deferred = IncrementalDelivery.deferredResults(executionResult);
+    Map<String, Object> result = toSpecification(executionResult, context);
+    return deferred == null ? CompletableFuture.completedFuture(result) : IncrementalDelivery.merge(result, deferred);
+  }
+
+  private static Map<String, Object> errorResult(String message, String code) {
+    Map<String, Object> error = new LinkedHashMap<>();
+    error.put("message", message);
+    error.put("extensions", Collections.singletonMap("code", code));
+    return Collections.singletonMap("errors", Collections.singletonList(error));
+  }
+
+  private static boolean isArray(Buffer body) {
+    for (int i = 0; i < body.length(); i++) {
+      byte b = body.getByte(i);
+      if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+        return b == '[';
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The query of a request, resolved through the persisted queries, or the reason it cannot be executed.
+   */
+  private class OperationRequest {
+
+    String query;
+    String hash;
+    PersistedQueries.Entry entry;
+    String errorMessage;
+    String errorCode;
+
+    OperationRequest(JsonObject body, boolean get) {
+      query = body.getString("query");
+      JsonObject extensions = body.getJsonObject("extensions");
+      JsonObject persistedQuery = extensions == null ? null : extensions.getJsonObject("persistedQuery");
+      hash = persistedQuery == null ? null : persistedQuery.getString("sha256Hash");
+      if (query == null && hash == null) {
+        errorCode = "BAD_REQUEST";
+        return;
+      }
+      if (hash != null) {
+        entry = persistedQueries.lookup(hash);
+        if (entry == null && query == null) {
+          errorMessage = "PersistedQueryNotFound";
+          errorCode = "PERSISTED_QUERY_NOT_FOUND";
+          return;
+        }
+      } else {
+        // Queries sent in full are analyzed once, to find those the response cache can serve and to prioritize them
+        entry = queryClassifier.classify(query);
+      }
+      if (entry == null && hash != null) {
+        try {
+          entry = persistedQueries.register(hash, query);
+        } catch (GraphQLException e) {
+          errorMessage = e.getMessage();
+          errorCode = "PERSISTED_QUERY_HASH_MISMATCH";
+          return;
+        }
+      }
+      if (entry != null) {
+        query = entry.getQuery();
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void addExtension(Map<String, Object> result, String key, Object value) {
+    Map<Object, Object> extensions = new LinkedHashMap<>();
+    Object existing = result.get("extensions");
+    if (existing != null) {
+      extensions.putAll((Map<Object, Object>) existing);
+    }
+    extensions.put(key, value);
+    result.put("extensions", extensions);
+  }
+
+  private JsonObject readQueryParams(RoutingContext rc) {
+    MultiMap params = rc.request().params();
+    JsonObject body = new JsonObject()
+      .put("query", params.get("query"))
+      .put("operationName", params.get("operationName"));
+    String variables = params.get("variables");
+    if (variables != null) {
+      body.put("variables", new JsonObject(variables));
+    }
+    String extensions = params.get("extensions");
+    if (extensions != null) {
+      body.put("extensions", new JsonObject(extensions));
+    }
+    return body;
+  }
+
+  private void endCacheable(RoutingContext rc, ResponseCache.Response cached) {
+    String etag = cached.getEtag();
+    HttpServerResponse response = rc.response()
+      .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+      .putHeader(HttpHeaders.ETAG, etag)
+      .putHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=" + cacheMaxAge);
+    if (etag.equals(rc.request().getHeader(HttpHeaders.IF_NONE_MATCH))) {
+      response.setStatusCode(304).end();
+    } else {
+      response.end(cached.getBody());
+    }
+  }
+
+  private void endWithError(RoutingContext rc, String message, String code) {
+    JsonObject error = new JsonObject()
+      .put("message", message)
+      .put("extensions", new JsonObject().put("code", code));
+    rc.response().end(new JsonObject().put("errors", new JsonArray().add(error)).toBuffer());
   }
 }
@@ -0,0 +1,247 @@
+package com.howtographql;
+
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State built once and shared by all the {@link Server} instances deployed in a Vert.x instance.
+ * <p>
+ * Each verticle which {@link #get(Vertx, JsonObject) gets} the resources {@link #release(Vertx) releases} them when
+ * it stops: the last release removes them, so that verticles deployed later build them again from their config.
+ */
+public class SharedResources implements Shareable {
+
+  private final TypeDefinitionRegistry typeDefinitionRegistry;
+  private final DocumentCache documentCache;
+  private final PersistedQueries persistedQueries;
+  private final QueryClassifier queryClassifier;
+  private final UserCache userCache;
+  private final Metrics metrics;
+  private final MetricsInstrumentation metricsInstrumentation;
+  private final FeedIndex feedIndex;
+  private final MemoryStore memoryStore;
+  private final PasswordHasher passwordHasher;
+  private final RateLimiter signinLimiterByEmail;
+  private final RateLimiter signinLimiterByAddress;
+  private final TokenService tokenService;
+  private final ResponseCache responseCache;
+  private final AdmissionController admissionController;
+  // Only updated in the computations of the shared map
+  private int references;
+
+  private SharedResources(TypeDefinitionRegistry typeDefinitionRegistry, DocumentCache documentCache, PersistedQueries persistedQueries, QueryClassifier queryClassifier,
+                          UserCache userCache, Metrics metrics, MetricsInstrumentation metricsInstrumentation, FeedIndex feedIndex, MemoryStore memoryStore,
+                          PasswordHasher passwordHasher, RateLimiter signinLimiterByEmail, RateLimiter signinLimiterByAddress, TokenService tokenService,
+                          ResponseCache responseCache, AdmissionController admissionController) {
+    this.typeDefinitionRegistry = typeDefinitionRegistry;
+    this.documentCache = documentCache;
+    this.persistedQueries = persistedQueries;
+    this.queryClassifier = queryClassifier;
+    this.userCache = userCache;
+    this.metrics = metrics;
+    this.metricsInstrumentation = metricsInstrumentation;
+    this.feedIndex = feedIndex;
+    this.memoryStore = memoryStore;
+    this.passwordHasher = passwordHasher;
+    this.signinLimiterByEmail = signinLimiterByEmail;
+    this.signinLimiterByAddress = signinLimiterByAddress;
+    this.tokenService = tokenService;
+    this.responseCache = responseCache;
+    this.admissionController = admissionController;
+  }
+
+  public static SharedResources get(Vertx vertx, JsonObject config) {
+    LocalMap<String, SharedResources> map = vertx.sharedData().getLocalMap("hackernews");
+    return map.compute("resources", (key, resources) -> {
+      if (resources == null) {
+        resources = create(vertx, config);
+      }
+      resources.references++;
+      return resources;
+    });
+  }
+
+  public static void release(Vertx vertx) {
+    LocalMap<String, SharedResources> map = vertx.sharedData().getLocalMap("hackernews");
+    map.compute("resources", (key, resources) -> {
+      if (resources == null || --resources.references > 0) {
+        return resources;
+      }
+      resources.passwordHasher.close();
+      return null;
+    });
+  }
+
+  private static SharedResources create(Vertx vertx, JsonObject config) {
+    String schema = vertx.fileSystem().readFileBlocking("schema.graphqls").toString();
+
+    SchemaParser schemaParser = new SchemaParser();
+    TypeDefinitionRegistry typeDefinitionRegistry = schemaParser.parse(schema);
+
+    DocumentCache documentCache = new DocumentCache(config.getInteger("documentCacheSize", 1000));
+    UserCache userCache = new UserCache(config.getInteger("userCacheSize", 10000), config.getLong("userCacheTtl", 60000L), TimeUnit.MILLISECONDS);
+
+    Metrics metrics = new Metrics();
+    metrics.counter("document_cache_hits_total", "Parsed document cache hits", "", documentCache::getHits);
+    metrics.counter("document_cache_misses_total", "Parsed document cache misses", "", documentCache::getMisses);
+    metrics.counter("document_cache_evictions_total", "Parsed document cache evictions", "", documentCache::getEvictions);
+    metrics.gauge("document_cache_size", "Parsed documents in the cache", "", documentCache::size);
+    metrics.counter("user_cache_hits_total", "Shared user cache hits", "", userCache::getHits);
+    metrics.counter("user_cache_misses_total", "Shared user cache misses", "", userCache::getMisses);
+    metrics.counter("user_cache_evictions_total", "Shared user cache evictions", "", userCache::getEvictions);
+    metrics.gauge("user_cache_size", "Users in the shared cache", "", userCache::size);
+
+    MemoryStore memoryStore = null;
+    if ("memory".equals(config.getString("storage", "mongo"))) {
+      memoryStore = createMemoryStore(config);
+      metrics.gauge("memory_store_documents", "Documents in the in-memory store", Metrics.label("collection", "users"), memoryStore::userCount);
+      metrics.gauge("memory_store_documents", "Documents in the in-memory store", Metrics.label("collection", "links"), memoryStore::linkCount);
+      metrics.gauge("memory_store_documents", "Documents in the in-memory store", Metrics.label("collection", "votes"), memoryStore::voteCount);
+      metrics.gauge("memory_store_pending_writes", "Writes waiting to be appended to the store log", "", memoryStore::pendingWrites);
+    }
+
+    ResponseCache responseCache = null;
+    int responseCacheSize = config.getInteger("responseCacheSize", 1000);
+    if (responseCacheSize > 0) {
+      responseCache = new ResponseCache(responseCacheSize, config.getLong("responseCacheTtl", 1000L), TimeUnit.MILLISECONDS);
+      metrics.counter("response_cache_hits_total", "Response cache hits", "", responseCache::getHits);
+      metrics.counter("response_cache_misses_total", "Response cache misses", "", responseCache::getMisses);
+      metrics.counter("response_cache_coalesced_total", "Response cache misses waiting for an execution in flight", "", responseCache::getCoalesced);
+      metrics.counter("response_cache_invalidations_total", "Response cache invalidations", "", responseCache::getInvalidations);
+      metrics.gauge("response_cache_size", "Responses in the response cache", "", responseCache::size);
+    }
+
+    AdmissionController admissionController = new AdmissionController(
+      config.getLong("maxEventLoopLag", 100L), TimeUnit.MILLISECONDS,
+      config.getInteger("maxInFlight", 1024),
+      config.getInteger("maxPendingRepositoryCalls", 2000),
+      config.getInteger("maxConcurrentPerToken", 16),
+      config.getInteger("maxConcurrentPerAddress", 64),
+      memoryStore != null ? memoryStore::pendingWrites : () -> 0);
+    metrics.gauge("admission_in_flight", "Operations admitted and not completed yet", "", admissionController::inFlight);
+    metrics.gauge("repository_calls_pending", "Repository calls waiting for the database", "", admissionController::pendingRepositoryCalls);
+
+    return new SharedResources(
+      typeDefinitionRegistry,
+      documentCache,
+      new PersistedQueries(config.getInteger("persistedQueriesSize", 10000)),
+      new QueryClassifier(config.getInteger("documentCacheSize", 1000)),
+      userCache,
+      metrics,
+      new MetricsInstrumentation(metrics, config.getInteger("maxOperationLabels", 100)),
+      new FeedIndex(Duration.ofHours(config.getInteger("feedWindowHours", 72)), config.getLong("feedRefreshPeriod", 1000L),
+        config.getInteger("feedRetainedRankings", 16)),
+      memoryStore,
+      new PasswordHasher(vertx,
+        config.getInteger("passwordHashPoolSize", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+        config.getInteger("passwordHashQueueSize", 64),
+        config.getInteger("passwordHashIterations", 100_000),
+        metrics),
+      new RateLimiter(config.getInteger("signinBurstPerEmail", 5), config.getInteger("signinRatePerEmail", 10), 1, TimeUnit.MINUTES, 100_000),
+      new RateLimiter(config.getInteger("signinBurstPerAddress", 20), config.getInteger("signinRatePerAddress", 100), 1, TimeUnit.MINUTES, 100_000),
+      new TokenService(tokenSecret(config), Duration.ofSeconds(config.getLong("tokenTtl", 86400L))),
+      responseCache,
+      admissionController);
+  }
+
+  private static byte[] tokenSecret(JsonObject config) {
+    String secret = config.getString("tokenSecret");
+    if (secret == null) {
+      // A random secret would invalidate the tokens on restart, and those signed by the other nodes
+      throw new IllegalArgumentException("No tokenSecret configured");
+    }
+    return secret.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static MemoryStore createMemoryStore(JsonObject config) {
+    String path = config.getString("storagePath");
+    if (path == null) {
+      return new MemoryStore();
+    }
+    try {
+      return MemoryStore.open(Paths.get(path), config.getBoolean("storageFsync", false));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public TypeDefinitionRegistry getTypeDefinitionRegistry() {
+    return typeDefinitionRegistry;
+  }
+
+  public DocumentCache getDocumentCache() {
+    return documentCache;
+  }
+
+  public PersistedQueries getPersistedQueries() {
+    return persistedQueries;
+  }
+
+  public QueryClassifier getQueryClassifier() {
+    return queryClassifier;
+  }
+
+  public UserCache getUserCache() {
+    return userCache;
+  }
+
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return the instrumentation recording operation metrics, shared so that the operation names are bounded overall
+   */
+  public MetricsInstrumentation getMetricsInstrumentation() {
+    return metricsInstrumentation;
+  }
+
+  public FeedIndex getFeedIndex() {
+    return feedIndex;
+  }
+
+  /**
+   * @return the store shared by the verticles when {@code storage} is {@code memory}, {@code null} otherwise
+   */
+  public MemoryStore getMemoryStore() {
+    return memoryStore;
+  }
+
+  public PasswordHasher getPasswordHasher() {
+    return passwordHasher;
+  }
+
+  public RateLimiter getSigninLimiterByEmail() {
+    return signinLimiterByEmail;
+  }
+
+  public RateLimiter getSigninLimiterByAddress() {
+    return signinLimiterByAddress;
+  }
+
+  public TokenService getTokenService() {
+    return tokenService;
+  }
+
+  /**
+   * @return the cache of anonymous feed responses, {@code null} when {@code responseCacheSize} is 0
+   */
+  public ResponseCache getResponseCache() {
+    return responseCache;
+  }
+
+  public AdmissionController getAdmissionController() {
+    return admissionController;
+  }
+}
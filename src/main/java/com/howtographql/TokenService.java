@@ -0,0 +1,88 @@
+package com.howtographql;
+
+import io.vertx.core.json.JsonObject;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Issues and verifies HS256 JSON Web Tokens carrying the user id ({@code sub}) and name.
+ * <p>
+ * Verification is local, a few microseconds of HMAC: authenticated requests need no storage round-trip. Tokens
+ * cannot be revoked before they expire, so keep the lifetime short enough.
+ */
+public class TokenService {
+
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final String HEADER = encode(new JsonObject().put("alg", "HS256").put("typ", "JWT").encode().getBytes(StandardCharsets.UTF_8));
+
+  private final SecretKeySpec key;
+  private final Duration ttl;
+  // Mac instances are not thread safe, and this service is shared by the event loops
+  private final ThreadLocal<Mac> macs;
+
+  public TokenService(byte[] secret, Duration ttl) {
+    this.key = new SecretKeySpec(secret, ALGORITHM);
+    this.ttl = ttl;
+    this.macs = ThreadLocal.withInitial(() -> {
+      try {
+        Mac mac = Mac.getInstance(ALGORITHM);
+        mac.init(key);
+        return mac;
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+  }
+
+  public String issue(User user) {
+    Instant now = Instant.now();
+    JsonObject claims = new JsonObject()
+      .put("sub", user.getId())
+      .put("name", user.getName())
+      .put("iat", now.getEpochSecond())
+      .put("exp", now.plus(ttl).getEpochSecond());
+    String content = HEADER + "." + encode(claims.encode().getBytes(StandardCharsets.UTF_8));
+    return content + "." + encode(sign(content));
+  }
+
+  /**
+   * @return the claims of the token, or {@code null} if it is malformed, not signed with our key or expired
+   */
+  public AuthToken verify(String token) {
+    int firstDot = token.indexOf('.');
+    int lastDot = token.lastIndexOf('.');
+    if (firstDot < 0 || firstDot == lastDot || !HEADER.equals(token.substring(0, firstDot))) {
+      return null;
+    }
+    String content = token.substring(0, lastDot);
+    try {
+      byte[] signature = Base64.getUrlDecoder().decode(token.substring(lastDot + 1));
+      if (!MessageDigest.isEqual(signature, sign(content))) {
+        return null;
+      }
+      JsonObject claims = new JsonObject(new String(Base64.getUrlDecoder().decode(token.substring(firstDot + 1, lastDot)), StandardCharsets.UTF_8));
+      Instant expiresAt = Instant.ofEpochSecond(claims.getLong("exp"));
+      if (!expiresAt.isAfter(Instant.now())) {
+        return null;
+      }
+      return new AuthToken(claims.getString("sub"), claims.getString("name"), expiresAt);
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  private byte[] sign(String content) {
+    return macs.get().doFinal(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String encode(byte[] bytes) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+}
@@ -1,12 +1,23 @@
 package com.howtographql;
 
-import org.dataloader.BatchLoader;
+import org.dataloader.MappedBatchLoader;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 
-public class UserBatchLoader implements BatchLoader<String, User> {
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Loads users like {@link LinkBatchLoader}, with one query fetching the union of the fields selected by its keys.
+ */
+public class UserBatchLoader implements MappedBatchLoader<UserKey, User> {
 
   private final UserRepository userRepository;
 
@@ -15,9 +26,25 @@ public class UserBatchLoader implements BatchLoader<String, User> {
   }
 
   @Override
-  public CompletionStage<List<User>> load(List<String> keys) {
+  public CompletionStage<Map<UserKey, User>> load(Set<UserKey> keys) {
+    Set<String> ids = new LinkedHashSet<>();
+    Projection projection = null;
+    for (UserKey key : keys) {
+      ids.add(key.getId());
+      projection = projection == null ? key.getProjection() : projection.union(key.getProjection());
+    }
     CompletableFuture<List<User>> future = new CompletableFuture<>();
-    userRepository.findByIds(keys, Utils.toHandler(future));
-    return future;
+    userRepository.findByIds(new ArrayList<>(ids), projection, Utils.toHandler(future));
+    return future.thenApply(users -> {
+      Map<String, User> byId = users.stream().collect(toMap(User::getId, identity()));
+      Map<UserKey, User> result = new HashMap<>();
+      for (UserKey key : keys) {
+        User user = byId.get(key.getId());
+        if (user != null) {
+          result.put(key, user);
+        }
+      }
+      return result;
+    });
   }
 }
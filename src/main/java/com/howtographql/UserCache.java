@@ -0,0 +1,113 @@
+package com.howtographql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, time-limited cache of users by id, shared by all requests and verticle instances.
+ * <p>
+ * Users loaded with a {@link Projection} are cached with it, and only serve lookups needing no more fields.
+ */
+public class UserCache {
+
+  private final int maxSize;
+  private final long ttlNanos;
+  private final Map<String, CachedUser> entries;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public UserCache(int maxSize, long ttl, TimeUnit unit) {
+    this.maxSize = maxSize;
+    this.ttlNanos = unit.toNanos(ttl);
+    this.entries = new LinkedHashMap<String, CachedUser>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+        if (size() > UserCache.this.maxSize) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  public User get(String id) {
+    return get(id, Projection.ALL);
+  }
+
+  public User get(String id, Projection projection) {
+    CachedUser cached;
+    synchronized (entries) {
+      cached = entries.get(id);
+      if (cached != null && cached.expiresAt - System.nanoTime() < 0) {
+        entries.remove(id);
+        cached = null;
+      }
+    }
+    if (cached == null || !projection.isCoveredBy(cached.projection)) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return cached.user;
+  }
+
+  public void put(User user) {
+    put(user, Projection.ALL);
+  }
+
+  public void put(User user, Projection projection) {
+    if (user == null || user.getId() == null) {
+      return;
+    }
+    long now = System.nanoTime();
+    CachedUser cached = new CachedUser(user, projection, now + ttlNanos);
+    synchronized (entries) {
+      CachedUser previous = entries.get(user.getId());
+      // Don't replace a live complete user by a partial one
+      if (previous == null || projection.isAll() || !previous.projection.isAll() || previous.expiresAt - now < 0) {
+        entries.put(user.getId(), cached);
+      }
+    }
+  }
+
+  public void invalidate(String id) {
+    synchronized (entries) {
+      entries.remove(id);
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  private static class CachedUser {
+
+    final User user;
+    final Projection projection;
+    final long expiresAt;
+
+    CachedUser(User user, Projection projection, long expiresAt) {
+      this.user = user;
+      this.projection = projection;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
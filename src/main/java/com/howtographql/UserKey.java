@@ -0,0 +1,40 @@
+package com.howtographql;
+
+/**
+ * Key of the {@code user} DataLoader: loads of the same user with different selections are not the same load.
+ */
+public class UserKey {
+
+  private final String id;
+  private final Projection projection;
+
+  public UserKey(String id, Projection projection) {
+    this.id = id;
+    this.projection = projection;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Projection getProjection() {
+    return projection;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof UserKey)) {
+      return false;
+    }
+    UserKey that = (UserKey) o;
+    return id.equals(that.id) && projection.equals(that.projection);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * id.hashCode() + projection.hashCode();
+  }
+}
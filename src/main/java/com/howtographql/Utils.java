@@ -3,10 +3,15 @@ package com.howtographql;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.CompletableFuture;
 
 public class Utils {
 
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
   public static <T> Handler<AsyncResult<T>> toHandler(CompletableFuture<T> cf) {
     return ar -> {
       if (ar.succeeded()) {
@@ -16,4 +21,24 @@ public class Utils {
       }
     };
   }
+
+  public static String sha256(String text) {
+    return sha256(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static String sha256(byte[] bytes) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    byte[] hash = digest.digest(bytes);
+    char[] chars = new char[hash.length * 2];
+    for (int i = 0; i < hash.length; i++) {
+      chars[2 * i] = HEX[(hash[i] >> 4) & 0xF];
+      chars[2 * i + 1] = HEX[hash[i] & 0xF];
+    }
+    return new String(chars);
+  }
 }
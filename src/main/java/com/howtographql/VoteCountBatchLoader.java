@@ -0,0 +1,28 @@
+package com.howtographql;
+
+import org.dataloader.MappedBatchLoader;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Counts the votes of all the links of a page with one aggregation. Links without votes are missing from the result.
+ */
+public class VoteCountBatchLoader implements MappedBatchLoader<String, Integer> {
+
+  private final VoteRepository voteRepository;
+
+  public VoteCountBatchLoader(VoteRepository voteRepository) {
+    this.voteRepository = voteRepository;
+  }
+
+  @Override
+  public CompletionStage<Map<String, Integer>> load(Set<String> keys) {
+    CompletableFuture<Map<String, Integer>> future = new CompletableFuture<>();
+    voteRepository.countByLinkIds(new ArrayList<>(keys), Utils.toHandler(future));
+    return future;
+  }
+}
@@ -1,52 +1,44 @@
 package com.howtographql;
 
 import io.vertx.core.AsyncResult;
-import io.vertx.core.Future;
 import io.vertx.core.Handler;
-import io.vertx.core.json.JsonObject;
-import io.vertx.ext.mongo.MongoClient;
 
-import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Map;
 
-import static java.util.stream.Collectors.toList;
-
-public class VoteRepository {
-
-  private final MongoClient mongoClient;
-
-  public VoteRepository(MongoClient mongoClient) {
-    this.mongoClient = mongoClient;
-  }
-
-  public void findByUserId(String userId, Handler<AsyncResult<List<Vote>>> handler) {
-    Future<List<JsonObject>> future = Future.future();
-    mongoClient.find("votes", new JsonObject().put("userId", userId), future);
-    future.map(list -> list.stream().map(this::vote).collect(toList())).setHandler(handler);
-  }
-
-  public void findByLinkId(String linkId, Handler<AsyncResult<List<Vote>>> handler) {
-    Future<List<JsonObject>> future = Future.future();
-    mongoClient.find("votes", new JsonObject().put("linkId", linkId), future);
-    future.map(list -> list.stream().map(this::vote).collect(toList())).setHandler(handler);
-  }
-
-  public void saveVote(Vote vote, Handler<AsyncResult<Vote>> handler) {
-    Future<String> future = Future.future();
-    JsonObject doc = new JsonObject()
-      .put("userId", vote.getUserId())
-      .put("linkId", vote.getLinkId())
-      .put("createdAt", Scalars.dateTime.getCoercing().serialize(vote.getCreatedAt()));
-    mongoClient.insert("votes", doc, future);
-    future.map(id -> vote(doc.put("_id", id))).setHandler(handler);
-  }
-
-  private Vote vote(JsonObject doc) {
-    return new Vote(
-      doc.getString("_id"),
-      ZonedDateTime.parse(doc.getString("createdAt")),
-      doc.getString("userId"),
-      doc.getString("linkId")
-    );
-  }
+/**
+ * Storage of votes, see {@link MongoVoteRepository} and {@link MemoryVoteRepository}.
+ */
+public interface VoteRepository {
+
+  void createIndexes(Handler<AsyncResult<Void>> handler);
+
+  /**
+   * Sets the vote counters of the links created before they existed from a count of their votes. Until then, their
+   * counters are not incremented and {@code Link.voteCount} counts their votes instead.
+   */
+  void backfillVoteCounts(Handler<AsyncResult<Void>> handler);
+
+  void findByUserId(String userId, Handler<AsyncResult<List<Vote>>> handler);
+
+  void findByLinkId(String linkId, Handler<AsyncResult<List<Vote>>> handler);
+
+  /**
+   * Completes with the first votes of each link in id order, after {@code afterId} if not {@code null}, grouped by
+   * link id, links without votes being absent.
+   */
+  void findByLinkIds(List<String> linkIds, String afterId, int first, Handler<AsyncResult<Map<String, List<Vote>>>> handler);
+
+  /**
+   * Completes with the vote counts by link id, links without votes being absent.
+   */
+  void countByLinkIds(List<String> linkIds, Handler<AsyncResult<Map<String, Integer>>> handler);
+
+  void saveVote(Vote vote, Handler<AsyncResult<Vote>> handler);
+
+  /**
+   * Saves the votes and increments the vote counters of their links. Completes successfully once the votes are
+   * saved, even if the counters could not be incremented.
+   */
+  void saveVotes(List<Vote> votes, Handler<AsyncResult<List<Vote>>> handler);
 }
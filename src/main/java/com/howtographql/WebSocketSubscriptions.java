@@ -0,0 +1,209 @@
+package com.howtographql;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.language.Document;
+import graphql.language.OperationDefinition;
+import graphql.parser.Parser;
+import io.vertx.core.Handler;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import org.dataloader.DataLoaderRegistry;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Serves GraphQL subscriptions over WebSocket, with the {@code graphql-ws} protocol of subscriptions-transport-ws.
+ * <p>
+ * Each connection requests one event at a time and stops requesting while its write queue is full: slow clients
+ * only lose their own (oldest) events, see {@link EventStream}. Starting a subscription goes through admission
+ * control like any other operation, the ticket being released once the subscription is set up.
+ */
+public class WebSocketSubscriptions implements Handler<ServerWebSocket> {
+
+  private final String path;
+  private final GraphQL graphQL;
+  private final Supplier<DataLoaderRegistry> registrySupplier;
+  private final Function<ServerWebSocket, AdmissionController.Ticket> admission;
+
+  public WebSocketSubscriptions(String path, GraphQL graphQL, Supplier<DataLoaderRegistry> registrySupplier,
+                                Function<ServerWebSocket, AdmissionController.Ticket> admission) {
+    this.path = path;
+    this.graphQL = graphQL;
+    this.registrySupplier = registrySupplier;
+    this.admission = admission;
+  }
+
+  @Override
+  public void handle(ServerWebSocket ws) {
+    if (!path.equals(ws.path())) {
+      ws.reject();
+      return;
+    }
+    new Connection(ws);
+  }
+
+  private class Connection {
+
+    final ServerWebSocket ws;
+    final Map<String, Subscription> operations = new HashMap<>();
+    final List<Runnable> paused = new ArrayList<>();
+
+    Connection(ServerWebSocket ws) {
+      this.ws = ws;
+      ws.textMessageHandler(this::handleMessage);
+      ws.drainHandler(v -> {
+        List<Runnable> resume = new ArrayList<>(paused);
+        paused.clear();
+        resume.forEach(Runnable::run);
+      });
+      ws.closeHandler(v -> {
+        operations.values().forEach(Subscription::cancel);
+        operations.clear();
+      });
+    }
+
+    void handleMessage(String text) {
+      JsonObject message;
+      try {
+        message = new JsonObject(text);
+      } catch (DecodeException e) {
+        send(new JsonObject().put("type", "connection_error").put("payload", new JsonObject().put("message", e.getMessage())));
+        return;
+      }
+      String id = message.getString("id");
+      switch (message.getString("type", "")) {
+        case "connection_init":
+          send(new JsonObject().put("type", "connection_ack"));
+          break;
+        case "start":
+          start(id, message.getJsonObject("payload", new JsonObject()));
+          break;
+        case "stop":
+          Subscription subscription = operations.remove(id);
+          if (subscription != null) {
+            subscription.cancel();
+          }
+          send(new JsonObject().put("type", "complete").put("id", id));
+          break;
+        case "connection_terminate":
+          ws.close();
+          break;
+        default:
+          send(new JsonObject().put("type", "error").put("id", id).put("payload", new JsonObject().put("message", "Unknown message type")));
+      }
+    }
+
+    void start(String id, JsonObject payload) {
+      String query = payload.getString("query");
+      if (query == null || !isSubscription(query)) {
+        sendError(id, "Only subscriptions are supported over WebSocket");
+        return;
+      }
+      AdmissionController.Ticket ticket = admission.apply(ws);
+      if (!ticket.isAdmitted()) {
+        send(new JsonObject().put("type", "error").put("id", id).put("payload", new JsonObject()
+          .put("message", ticket.getRejection().equals("OVERLOADED") ? "Server overloaded, retry later" : "Too many concurrent requests")
+          .put("extensions", new JsonObject().put("code", ticket.getRejection()))));
+        return;
+      }
+      ExecutionInput.Builder builder = ExecutionInput.newExecutionInput()
+        .query(query)
+        .dataLoaderRegistry(registrySupplier.get());
+      String operationName = payload.getString("operationName");
+      if (operationName != null) {
+        builder.operationName(operationName);
+      }
+      JsonObject variables = payload.getJsonObject("variables");
+      if (variables != null) {
+        builder.variables(variables.getMap());
+      }
+      graphQL.executeAsync(builder.build()).whenComplete((executionResult, throwable) -> {
+        ticket.release();
+        if (throwable != null) {
+          sendError(id, throwable.getMessage());
+        } else if (!(executionResult.getData() instanceof Publisher)) {
+          send(new JsonObject().put("type", "data").put("id", id).put("payload", new JsonObject(executionResult.toSpecification())));
+          send(new JsonObject().put("type", "complete").put("id", id));
+        } else {
+          Publisher<ExecutionResult> publisher = executionResult.getData();
+          publisher.subscribe(new OperationSubscriber(id));
+        }
+      });
+    }
+
+    void send(JsonObject message) {
+      ws.writeTextMessage(message.encode());
+    }
+
+    void sendError(String id, String message) {
+      send(new JsonObject().put("type", "error").put("id", id).put("payload", new JsonObject().put("message", message)));
+    }
+
+    class OperationSubscriber implements Subscriber<ExecutionResult> {
+
+      final String id;
+      Subscription subscription;
+
+      OperationSubscriber(String id) {
+        this.id = id;
+      }
+
+      @Override
+      public void onSubscribe(Subscription s) {
+        subscription = s;
+        operations.put(id, s);
+        s.request(1);
+      }
+
+      @Override
+      public void onNext(ExecutionResult result) {
+        ws.writeTextMessage(new JsonObject()
+          .put("type", "data")
+          .put("id", id)
+          .put("payload", new JsonObject(result.toSpecification()))
+          .encode());
+        if (ws.writeQueueFull()) {
+          paused.add(() -> subscription.request(1));
+        } else {
+          subscription.request(1);
+        }
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        operations.remove(id);
+        sendError(id, t.getMessage());
+      }
+
+      @Override
+      public void onComplete() {
+        operations.remove(id);
+        send(new JsonObject().put("type", "complete").put("id", id));
+      }
+    }
+  }
+
+  private static boolean isSubscription(String query) {
+    Document document;
+    try {
+      document = new Parser().parseDocument(query);
+    } catch (Exception e) {
+      return false;
+    }
+    return document.getDefinitions().stream()
+      .filter(OperationDefinition.class::isInstance)
+      .map(OperationDefinition.class::cast)
+      .allMatch(operation -> operation.getOperation() == OperationDefinition.Operation.SUBSCRIPTION);
+  }
+}
@@ -0,0 +1,83 @@
+package com.howtographql;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AppendLogTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void replaysAppendedEntries() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("log.jsonl");
+    AppendLog log = new AppendLog(file, true);
+    CompletableFuture<Void> first = new CompletableFuture<>();
+    CompletableFuture<Void> second = new CompletableFuture<>();
+    log.append(Arrays.asList(entry(1), entry(2)), ar -> first.complete(null));
+    log.append(Arrays.asList(entry(3)), ar -> second.complete(null));
+    CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList(entry(1), entry(2), entry(3)), replay(file));
+  }
+
+  @Test
+  public void ignoresATruncatedLastEntry() throws Exception {
+    Path file = write(entry(1).encode() + "\n" + entry(2).encode() + "\n{\"n\":3,\"pa");
+    assertEquals(Arrays.asList(entry(1), entry(2)), replay(file));
+  }
+
+  @Test
+  public void rejectsCorruptedEntriesBeforeTheEnd() throws Exception {
+    Path file = write(entry(1).encode() + "\n{\"n\":2,\"pa\n" + entry(3).encode() + "\n");
+    try {
+      replay(file);
+      fail("corrupted entry replayed");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().startsWith("Corrupted entry"));
+    }
+  }
+
+  @Test
+  public void replaysNothingWithoutFile() throws Exception {
+    assertTrue(replay(folder.getRoot().toPath().resolve("missing.jsonl")).isEmpty());
+  }
+
+  @Test
+  public void replacesFiles() throws Exception {
+    Path file = write(entry(1).encode() + "\n");
+    AppendLog.write(file, Arrays.asList(entry(2), entry(3)));
+    assertEquals(Arrays.asList(entry(2), entry(3)), replay(file));
+  }
+
+  private Path write(String content) throws IOException {
+    Path file = folder.newFile("log.jsonl").toPath();
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static List<JsonObject> replay(Path file) throws IOException {
+    List<JsonObject> entries = new ArrayList<>();
+    AppendLog.replay(file, entries::add);
+    return entries;
+  }
+
+  private static JsonObject entry(int n) {
+    return new JsonObject().put("n", n).put("payload", "entry " + n);
+  }
+}
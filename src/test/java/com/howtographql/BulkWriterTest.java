@@ -0,0 +1,64 @@
+package com.howtographql;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import org.bson.BsonDocument;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BulkWriterTest {
+
+  // Three submissions of 2, 3 and 1 operations
+  private static final List<Integer> OFFSETS = Arrays.asList(0, 2, 5);
+
+  @Test
+  public void succeedsEverySubmission() {
+    List<AsyncResult<Void>> results = BulkWriter.results(Future.succeededFuture(), OFFSETS, 6);
+    assertEquals(3, results.size());
+    results.forEach(result -> assertTrue(result.succeeded()));
+  }
+
+  @Test
+  public void failsOnlyTheSubmissionsHoldingWriteErrors() {
+    MongoBulkWriteException exception = new MongoBulkWriteException(BulkWriteResult.unacknowledged(),
+      Arrays.asList(error(3, "duplicate key"), error(4, "another duplicate key")), null, new ServerAddress());
+    List<AsyncResult<Void>> results = BulkWriter.results(Future.failedFuture(exception), OFFSETS, 6);
+    assertTrue(results.get(0).succeeded());
+    assertTrue(results.get(1).failed());
+    assertEquals("duplicate key", results.get(1).cause().getMessage());
+    assertTrue(results.get(2).succeeded());
+  }
+
+  @Test
+  public void mapsErrorsAtSubmissionBoundaries() {
+    MongoBulkWriteException exception = new MongoBulkWriteException(BulkWriteResult.unacknowledged(),
+      Arrays.asList(error(2, "first of the second"), error(5, "last")), null, new ServerAddress());
+    List<AsyncResult<Void>> results = BulkWriter.results(Future.failedFuture(exception), OFFSETS, 6);
+    assertTrue(results.get(0).succeeded());
+    assertEquals("first of the second", results.get(1).cause().getMessage());
+    assertEquals("last", results.get(2).cause().getMessage());
+  }
+
+  @Test
+  public void failsEverySubmissionOnOtherFailures() {
+    RuntimeException failure = new RuntimeException("connection refused");
+    List<AsyncResult<Void>> results = BulkWriter.results(Future.failedFuture(failure), Collections.singletonList(0), 1);
+    assertEquals(1, results.size());
+    assertSame(failure, results.get(0).cause());
+  }
+
+  private static BulkWriteError error(int index, String message) {
+    return new BulkWriteError(11000, message, new BsonDocument(), index);
+  }
+}
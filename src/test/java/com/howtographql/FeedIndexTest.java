@@ -0,0 +1,158 @@
+package com.howtographql;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.bson.types.ObjectId;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FeedIndexTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Vertx vertx = Vertx.vertx();
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void encodesPositions() {
+    FeedIndex.Position position = new FeedIndex.Position(1546300800000L, 0.125, "5c2a5f0e1c9d440000a1b2c3");
+    FeedIndex.Position decoded = FeedIndex.Position.decode(position.encode());
+    assertEquals(position.encode(), decoded.encode());
+    assertEquals(0, position.compareTo(decoded));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMalformedPositions() {
+    FeedIndex.Position.decode("5c2a5f0e1c9d440000a1b2c3");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsPositionsWithoutTime() {
+    FeedIndex.Position.decode("now:0.5:5c2a5f0e1c9d440000a1b2c3");
+  }
+
+  @Test
+  public void ordersPositionsByScoreThenId() {
+    FeedIndex.Position high = new FeedIndex.Position(0, 2, "b");
+    FeedIndex.Position lowA = new FeedIndex.Position(0, 1, "a");
+    FeedIndex.Position lowB = new FeedIndex.Position(0, 1, "b");
+    assertTrue(high.compareTo(lowA) < 0);
+    assertTrue(lowA.compareTo(lowB) < 0);
+    assertTrue(lowB.compareTo(high) > 0);
+  }
+
+  @Test
+  public void ranksByVotesAndAge() {
+    Instant now = Instant.now();
+    List<FeedIndex.RankedLink> links = Arrays.asList(
+      rankedLink("old", 10, now.minus(Duration.ofHours(48))),
+      rankedLink("new", 10, now),
+      rankedLink("popular", 50, now.minus(Duration.ofHours(1))));
+    List<FeedIndex.RankedLink> ranked = FeedIndex.rank(links, now.toEpochMilli());
+    assertEquals(Arrays.asList("popular", "new", "old"), ids(ranked));
+    assertTrue(ranked.get(0).getPosition().encode().startsWith(now.toEpochMilli() + ":"));
+  }
+
+  @Test
+  public void pagesAfterPositions() throws Exception {
+    List<String> expected = new ArrayList<>();
+    List<Link> links = new ArrayList<>();
+    for (int votes = 0; votes < 5; votes++) {
+      Link link = new Link(new ObjectId().toHexString(), "https://example.com/" + votes, "Link " + votes, null, votes);
+      links.add(link);
+      expected.add(0, link.getId());
+    }
+    FeedIndex index = start(links);
+
+    List<String> paged = new ArrayList<>();
+    FeedIndex.Position after = null;
+    for (List<FeedIndex.RankedLink> page; !(page = index.page(after, 2)).isEmpty(); ) {
+      assertTrue(page.size() <= 2);
+      paged.addAll(ids(page));
+      after = FeedIndex.Position.decode(page.get(page.size() - 1).getPosition().encode());
+    }
+    assertEquals(expected, paged);
+  }
+
+  @Test
+  public void pagesPositionsOfOlderRankings() throws Exception {
+    Instant now = Instant.now();
+    // More voted but older: ranked last now, first a day later
+    Link recent = new Link(new ObjectId(Date.from(now)).toHexString(), "https://example.com/recent", "Recent", null, 3);
+    Link old = new Link(new ObjectId(Date.from(now.minus(Duration.ofHours(20)))).toHexString(), "https://example.com/old", "Old", null, 40);
+    FeedIndex index = start(Arrays.asList(recent, old));
+    assertEquals(Arrays.asList(recent.getId(), old.getId()), ids(index.page(null, 10)));
+
+    long tomorrow = now.plus(Duration.ofDays(1)).toEpochMilli();
+    List<FeedIndex.RankedLink> later = FeedIndex.rank(Arrays.asList(
+      new FeedIndex.RankedLink(recent, LinkRepository.creationTime(recent.getId()), null),
+      new FeedIndex.RankedLink(old, LinkRepository.creationTime(old.getId()), null)), tomorrow);
+    assertEquals(Arrays.asList(old.getId(), recent.getId()), ids(later));
+    assertEquals(Arrays.asList(recent.getId()), ids(index.page(later.get(0).getPosition(), 10)));
+  }
+
+  @Test
+  public void pagesRetainedRankings() throws Exception {
+    Link first = new Link(new ObjectId().toHexString(), "https://example.com/first", "First", null, 2);
+    Link second = new Link(new ObjectId().toHexString(), "https://example.com/second", "Second", null, 1);
+    Link third = new Link(new ObjectId().toHexString(), "https://example.com/third", "Third", null, 0);
+    FeedIndex index = start(Arrays.asList(first, second, third), 10);
+    List<FeedIndex.RankedLink> page = index.page(null, 1);
+    assertEquals(Arrays.asList(first.getId()), ids(page));
+
+    // The third link moves to the top of the next rankings
+    for (int i = 0; i < 5; i++) {
+      vertx.eventBus().publish(FeedIndex.VOTE_CREATED, new JsonObject().put("linkId", third.getId()));
+    }
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (!ids(index.page(null, 1)).equals(Arrays.asList(third.getId())) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(Arrays.asList(third.getId()), ids(index.page(null, 1)));
+    assertEquals(Arrays.asList(second.getId(), third.getId()), ids(index.page(page.get(0).getPosition(), 10)));
+  }
+
+  private FeedIndex start(List<Link> links) throws Exception {
+    return start(links, TimeUnit.HOURS.toMillis(1));
+  }
+
+  private FeedIndex start(List<Link> links, long refreshPeriod) throws Exception {
+    MemoryStore store = MemoryStore.open(folder.newFolder().toPath(), false);
+    CompletableFuture<Void> inserted = new CompletableFuture<>();
+    store.insertLinks(links, ar -> inserted.complete(null));
+    inserted.get(10, TimeUnit.SECONDS);
+    FeedIndex index = new FeedIndex(Duration.ofDays(2), refreshPeriod, 100);
+    CompletableFuture<Void> started = new CompletableFuture<>();
+    vertx.runOnContext(v -> index.start(vertx, new MemoryLinkRepository(store), ar -> started.complete(null)));
+    started.get(10, TimeUnit.SECONDS);
+    return index;
+  }
+
+  private static FeedIndex.RankedLink rankedLink(String id, int votes, Instant createdAt) {
+    return new FeedIndex.RankedLink(new Link(id, "https://example.com/" + id, id, null, votes), createdAt, null);
+  }
+
+  private static List<String> ids(List<FeedIndex.RankedLink> links) {
+    return links.stream().map(link -> link.getLink().getId()).collect(toList());
+  }
+}
@@ -0,0 +1,78 @@
+package com.howtographql;
+
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryCostInstrumentationTest {
+
+  private static final String SCHEMA = "directive @cost(value: Int!) on FIELD_DEFINITION\n"
+    + "type Query { links(first: Int): [Link] @cost(value: 2) }\n"
+    + "type Link { id: ID url: String next: Link votes(first: Int): [Vote] @cost(value: 3) }\n"
+    + "type Vote { id: ID }\n";
+
+  private static final GraphQLSchema schema = new SchemaGenerator()
+    .makeExecutableSchema(new SchemaParser().parse(SCHEMA), RuntimeWiring.newRuntimeWiring().build());
+
+  private static ExecutionResult execute(String query, int maxDepth, int maxComplexity) {
+    return GraphQL.newGraphQL(schema)
+      .instrumentation(new QueryCostInstrumentation(maxDepth, maxComplexity, 100))
+      .build()
+      .execute(query);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> cost(ExecutionResult result) {
+    return (Map<String, Object>) result.getExtensions().get("cost");
+  }
+
+  @Test
+  public void multipliesByTheFirstOfEnclosingLists() {
+    ExecutionResult result = execute("{ links(first: 10) { id votes(first: 5) { id } } }", 10, 1000);
+    assertTrue(result.getErrors().isEmpty());
+    // links: 2, votes: 3 for each of the 10 links; scalars are free
+    assertEquals(32L, cost(result).get("complexity"));
+    assertEquals(3, cost(result).get("depth"));
+  }
+
+  @Test
+  public void capsFirstToTheMaximum() {
+    ExecutionResult result = execute("{ links(first: 1000) { votes { id } } }", 10, 1000);
+    assertEquals(302L, cost(result).get("complexity"));
+  }
+
+  @Test
+  public void rejectsDeepOperations() {
+    ExecutionResult result = execute("{ links(first: 1) { next { next { id } } } }", 3, 1000);
+    assertNull(result.getData());
+    assertEquals(1, result.getErrors().size());
+    assertTrue(result.getErrors().get(0).getMessage().startsWith("maximum query depth exceeded 4 > 3"));
+    assertEquals(4, cost(result).get("depth"));
+  }
+
+  @Test
+  public void rejectsComplexOperations() {
+    ExecutionResult result = execute("{ links(first: 100) { votes { id } } }", 10, 300);
+    assertNull(result.getData());
+    assertTrue(result.getErrors().get(0).getMessage().startsWith("maximum query complexity exceeded 302 > 300"));
+    assertEquals(302L, cost(result).get("complexity"));
+    assertEquals(300, cost(result).get("maxComplexity"));
+  }
+
+  @Test
+  public void ignoresIntrospection() {
+    ExecutionResult result = execute("{ __schema { types { name fields { name type { name ofType { name } } } } } }", 2, 1);
+    assertTrue(result.getErrors().isEmpty());
+    assertEquals(0L, cost(result).get("complexity"));
+  }
+}
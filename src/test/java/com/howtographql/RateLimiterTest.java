@@ -0,0 +1,57 @@
+package com.howtographql;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  @Test
+  public void allowsBurstsThenRefills() {
+    RateLimiter limiter = new RateLimiter(2, 1, 100, TimeUnit.MILLISECONDS, 10, now::get);
+    assertTrue(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("a"));
+    assertFalse(limiter.tryAcquire("a"));
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(99));
+    assertFalse(limiter.tryAcquire("a"));
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+    assertTrue(limiter.tryAcquire("a"));
+    assertFalse(limiter.tryAcquire("a"));
+  }
+
+  @Test
+  public void refillsUpToTheBurst() {
+    RateLimiter limiter = new RateLimiter(2, 1, 10, TimeUnit.MILLISECONDS, 10, now::get);
+    assertTrue(limiter.tryAcquire("a"));
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+    assertTrue(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("a"));
+    assertFalse(limiter.tryAcquire("a"));
+  }
+
+  @Test
+  public void limitsKeysSeparately() {
+    RateLimiter limiter = new RateLimiter(1, 1, 1, TimeUnit.HOURS, 10);
+    assertTrue(limiter.tryAcquire("a"));
+    assertFalse(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("b"));
+  }
+
+  @Test
+  public void forgetsLeastRecentlyUsedKeys() {
+    RateLimiter limiter = new RateLimiter(1, 1, 1, TimeUnit.HOURS, 2);
+    assertTrue(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("b"));
+    assertFalse(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("c"));
+    // "b" was the least recently used bucket: forgotten, it gets a fresh burst
+    assertTrue(limiter.tryAcquire("b"));
+    assertFalse(limiter.tryAcquire("c"));
+  }
+}
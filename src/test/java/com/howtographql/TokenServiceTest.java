@@ -0,0 +1,56 @@
+package com.howtographql;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TokenServiceTest {
+
+  private final TokenService tokenService = new TokenService("secret".getBytes(StandardCharsets.UTF_8), Duration.ofHours(1));
+  private final User user = new User("5c2a5f0e1c9d440000a1b2c3", "Alice", "alice@example.com", "hash");
+
+  @Test
+  public void verifiesIssuedTokens() {
+    AuthToken token = tokenService.verify(tokenService.issue(user));
+    assertEquals(user.getId(), token.getUserId());
+    assertEquals("Alice", token.getName());
+    assertTrue(token.getExpiresAt().isAfter(Instant.now().plus(Duration.ofMinutes(59))));
+  }
+
+  @Test
+  public void rejectsExpiredTokens() {
+    TokenService expiring = new TokenService("secret".getBytes(StandardCharsets.UTF_8), Duration.ZERO);
+    assertNull(expiring.verify(expiring.issue(user)));
+  }
+
+  @Test
+  public void rejectsTokensSignedWithAnotherKey() {
+    TokenService other = new TokenService("other".getBytes(StandardCharsets.UTF_8), Duration.ofHours(1));
+    assertNull(tokenService.verify(other.issue(user)));
+  }
+
+  @Test
+  public void rejectsTamperedClaims() {
+    String[] parts = tokenService.issue(user).split("\\.");
+    String claims = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8).replace(user.getId(), "5c2a5f0e1c9d440000ffffff");
+    String tampered = parts[0] + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + "." + parts[2];
+    assertNull(tokenService.verify(tampered));
+  }
+
+  @Test
+  public void rejectsMalformedTokens() {
+    String token = tokenService.issue(user);
+    assertNull(tokenService.verify(""));
+    assertNull(tokenService.verify("not a token"));
+    assertNull(tokenService.verify(token.substring(0, token.lastIndexOf('.'))));
+    assertNull(tokenService.verify(token + "!"));
+    assertNull(tokenService.verify("e30." + token.substring(token.indexOf('.') + 1)));
+  }
+}